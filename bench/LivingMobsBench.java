@@ -0,0 +1,81 @@
+import java.util.Arrays;
+
+/**
+ * Times a Critter leaving and re-entering a room holding 1 to 10,000 other
+ * Critters, which is the check {@link Room#leave(Thing) Room.leave} makes
+ * against the living Mobs of the room.
+ * <br />Two rooms are timed for each population: one where every Critter
+ * but the first has fainted (an arena after a fight), where only the
+ * living Mobs are asked, and one where every Critter is alive, where all
+ * of them are asked and none wants to fight.
+ * <br />Build the game classes first, then:
+ * <pre>
+ * javac -cp classes -d classes bench/LivingMobsBench.java
+ * java -cp classes LivingMobsBench [rounds]
+ * </pre>
+ * The best time of the rounds is shown, in ns per leave and enter.
+ */
+public class LivingMobsBench {
+
+    // Numbers of Critters in the room
+    private static final int[] POPULATIONS = {1, 10, 100, 1000, 10000};
+    // Rounds to run when none is given
+    private static final int DEFAULT_ROUNDS = 5;
+    // Critters (in total over all leaves) each timing should ask about
+    private static final long WORK = 100_000_000L;
+    // Fewest leaves to time
+    private static final int MIN_ITERATIONS = 20_000;
+
+    public static void main(String[] args) {
+        int rounds = (args.length > 0) ? Integer.parseInt(args[0])
+                : DEFAULT_ROUNDS;
+        double[] mostlyDead = new double[POPULATIONS.length];
+        double[] allAlive = new double[POPULATIONS.length];
+        Arrays.fill(mostlyDead, Double.MAX_VALUE);
+        Arrays.fill(allAlive, Double.MAX_VALUE);
+        for (int round = 0; round < rounds; round++) {
+            for (int p = 0; p < POPULATIONS.length; p++) {
+                int population = POPULATIONS[p];
+                mostlyDead[p] = Math.min(mostlyDead[p],
+                        time(population, false));
+                allAlive[p] = Math.min(allAlive[p], time(population, true));
+            }
+        }
+        System.out.println("population   mostly dead (ns)   all alive (ns)");
+        for (int p = 0; p < POPULATIONS.length; p++) {
+            System.out.printf("%10d   %16.1f   %14.1f%n", POPULATIONS[p],
+                    mostlyDead[p], allAlive[p]);
+        }
+    }
+
+    /**
+     * Time a Critter leaving and entering a room.
+     *
+     * @param population Number of other Critters in the room
+     * @param alive true if they are all alive, false if all but one have
+     *              fainted
+     * @return ns per leave and enter
+     */
+    private static double time(int population, boolean alive) {
+        Room room = new Room("arena");
+        for (int i = 0; i < population; i++) {
+            Critter critter = new Critter("rat" + i, "a rat", 1, 5);
+            room.enter(critter);
+            if (!alive && i > 0) {
+                critter.setAlive(false);
+            }
+        }
+        Critter mover = new Critter("mover", "a rat on the move", 1, 5);
+        room.enter(mover);
+        int iterations = (int) Math.max(MIN_ITERATIONS,
+                WORK / (population + 1));
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            if (!room.leave(mover)) {
+                throw new IllegalStateException("mover was kept in");
+            }
+            room.enter(mover);
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+}
@@ -0,0 +1,192 @@
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Times many threads moving Explorers around a small grid of rooms, once
+ * with {@link SharedRoom SharedRoom}s (one lock per room, moves through
+ * {@link SharedRoom#move(Thing, Room) move}) and once with plain Rooms
+ * and one global lock around each leave and enter.
+ * <br />Each room also holds a fainted Critter, so every move makes the
+ * living-Mob check. After each run every Explorer must be in exactly the
+ * room its thread thinks it is in.
+ * <br />Build the game classes first, then:
+ * <pre>
+ * javac -cp classes -d classes bench/SharedRoomBench.java
+ * java -cp classes SharedRoomBench [moves]
+ * </pre>
+ * The best of three runs is shown, in millions of moves a second. Per-room
+ * locks can only beat the global lock when there are CPUs for the threads
+ * to run on at once.
+ */
+public class SharedRoomBench {
+
+    // Sides of the square grids to move around
+    private static final int[] SIDES = {2, 4, 8};
+    // Numbers of threads to move with
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+    // Moves (over all threads) in each run when none is given
+    private static final int DEFAULT_MOVES = 800_000;
+    // Directions to pick moves from
+    private static final Direction[] DIRECTIONS = Direction.values();
+    // Lock around every move of plain Rooms
+    private static final Object GLOBAL = new Object();
+
+    public static void main(String[] args) throws InterruptedException {
+        int moves = (args.length > 0) ? Integer.parseInt(args[0])
+                : DEFAULT_MOVES;
+        System.out.println("rooms   threads   per-room   global   "
+                + "(Mmoves/s, " + Runtime.getRuntime().availableProcessors()
+                + " CPUs)");
+        for (int side : SIDES) {
+            for (int threads : THREADS) {
+                // warm up
+                run(side, threads, true, moves / 4);
+                run(side, threads, false, moves / 4);
+                double perRoom = 0;
+                double global = 0;
+                for (int i = 0; i < 3; i++) {
+                    perRoom = Math.max(perRoom,
+                            run(side, threads, true, moves));
+                    global = Math.max(global,
+                            run(side, threads, false, moves));
+                }
+                System.out.printf("%2dx%-2d   %7d   %8.2f   %6.2f%n", side,
+                        side, threads, perRoom, global);
+            }
+        }
+    }
+
+    /**
+     * @param side Side of the grid
+     * @param shared true for SharedRooms, false for Rooms and a global lock
+     * @return the rooms of the grid, row by row
+     */
+    private static Room[] grid(int side, boolean shared) {
+        Room[] rooms = new Room[side * side];
+        for (int i = 0; i < rooms.length; i++) {
+            rooms[i] = shared ? new SharedRoom("room " + i)
+                    : new Room("room " + i);
+            Critter critter = new Critter("rat", "a fainted rat", 1, 5);
+            rooms[i].enter(critter);
+            critter.setAlive(false);
+        }
+        try {
+            for (int y = 0; y < side; y++) {
+                for (int x = 0; x < side; x++) {
+                    Room room = rooms[y * side + x];
+                    if (x + 1 < side) {
+                        Room.makeExitPair(room, rooms[y * side + x + 1],
+                                "East", "West");
+                    }
+                    if (y + 1 < side) {
+                        Room.makeExitPair(room, rooms[(y + 1) * side + x],
+                                "South", "North");
+                    }
+                }
+            }
+        } catch (ExitExistsException | NullRoomException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return rooms;
+    }
+
+    /**
+     * Move Explorers around a new grid.
+     *
+     * @param side Side of the grid
+     * @param threads Number of threads (each moving its own Explorer)
+     * @param shared true for SharedRooms, false for Rooms and a global lock
+     * @param moves Moves over all threads
+     * @return millions of moves a second
+     * @throws InterruptedException if interrupted waiting for the threads
+     */
+    private static double run(int side, int threads, boolean shared,
+            int moves) throws InterruptedException {
+        Room[] rooms = grid(side, shared);
+        Explorer[] explorers = new Explorer[threads];
+        Room[] at = new Room[threads];
+        for (int t = 0; t < threads; t++) {
+            explorers[t] = new Explorer("explorer " + t, "an explorer", 10);
+            at[t] = rooms[t % rooms.length];
+            at[t].enter(explorers[t]);
+        }
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int number = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                at[number] = walk(at[number], explorers[number], shared,
+                        moves / threads, new Random(number));
+            });
+            workers[t].start();
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        check(rooms, explorers, at);
+        return (moves / threads) * threads / seconds / 1e6;
+    }
+
+    /**
+     * Make random moves with one Explorer.
+     *
+     * @return the room the Explorer ends up in
+     */
+    private static Room walk(Room here, Explorer explorer, boolean shared,
+            int moves, Random random) {
+        for (int i = 0; i < moves; i++) {
+            Room next = here.getExit(
+                    DIRECTIONS[random.nextInt(DIRECTIONS.length)]);
+            if (next == null) {
+                continue;
+            }
+            if (shared) {
+                try {
+                    if (((SharedRoom) here).move(explorer, next)) {
+                        here = next;
+                    }
+                } catch (NullRoomException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            } else {
+                synchronized (GLOBAL) {
+                    if (here.leave(explorer)) {
+                        next.enter(explorer);
+                        here = next;
+                    }
+                }
+            }
+        }
+        return here;
+    }
+
+    /**
+     * Check every Explorer is in exactly the room its thread ended in.
+     */
+    private static void check(Room[] rooms, Explorer[] explorers, Room[] at) {
+        for (int t = 0; t < explorers.length; t++) {
+            int found = 0;
+            for (Room room : rooms) {
+                if (room.getContents().contains(explorers[t])) {
+                    found++;
+                    if (room != at[t]) {
+                        throw new IllegalStateException("explorer " + t
+                                + " is in the wrong room");
+                    }
+                }
+            }
+            if (found != 1) {
+                throw new IllegalStateException("explorer " + t
+                        + " is in " + found + " rooms");
+            }
+        }
+    }
+}
@@ -0,0 +1,510 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static routines to save and load {@link Room Room}s in a compact binary
+ * format.
+ * <br />The file holds the same information as the text format written by
+ * {@link MapIO#saveMap(Room, String) MapIO.saveMap}, in the same room order:
+ * <ol><li>The magic bytes "CRWB" followed by a version byte</li>
+ *     <li>A dictionary: the number of distinct strings, then each string as
+ *         a byte length and UTF-8 bytes</li>
+ *     <li>The number of rooms</li>
+ *     <li>Room descriptions (as dictionary indices)</li>
+ *     <li>Room exits: for each room a count then target room id and label
+ *         (dictionary index) pairs</li>
+ *     <li>Room contents: for each room a count then one record per Thing
+ *         (see {@link #writeThing(DataOutput, Thing, Map)})</li>
+ * </ol>
+ * All counts, ids and indices are unsigned LEB128 varints, health values
+ * are zig-zag encoded varints and Thing values are 8 byte doubles.
+ */
+public class BinaryMapIO {
+
+    // Magic bytes at the start of every binary map
+    private static final byte[] MAGIC = {'C', 'R', 'W', 'B'};
+    // Current format version
+    private static final int VERSION = 1;
+    // Buffer size used for file streams
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Most bytes of a string to allocate before they have been read
+    private static final int STRING_CHUNK = 64 * 1024;
+    // Fewest bytes a room takes in the file: its description index, exit
+    // count and content count
+    private static final int MIN_ROOM_BYTES = 3;
+
+    // Thing record tags
+    private static final int TREASURE = '$';
+    private static final int CRITTER = 'C';
+    private static final int EXPLORER = 'E';
+    // Any other Thing, stored as its repr()
+    private static final int REPR = 'R';
+
+    /**
+     * Write the rooms reachable from root to a new binary file.
+     *
+     * @param root Start room
+     * @param filename Filename to write to
+     * @return true if successful
+     * @see MapIO#saveMap(Room, String)
+     */
+    public static boolean saveMap(Room root, String filename) {
+        MapIO.SeqWalker sw = new MapIO.SeqWalker(root);
+        sw.walk();
+        List<Room> rooms = sw.seq;
+        RoomIntTable ids = MapIO.ids(rooms);
+        // Collect every string the map uses, in first use order
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (Room room : rooms) {
+            intern(strings, room.getDescription());
+        }
+        for (Room room : rooms) {
+            for (String label : room.getExits().keySet()) {
+                intern(strings, label);
+            }
+        }
+        for (Room room : rooms) {
+            for (Thing thing : room.getContents()) {
+                internThing(strings, thing);
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename),
+                        BUFFER_SIZE))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            writeVarint(out, strings.size());
+            for (String text : strings.keySet()) {
+                writeString(out, text);
+            }
+            writeVarint(out, rooms.size());
+            for (Room room : rooms) {
+                writeVarint(out, strings.get(room.getDescription()));
+            }
+            for (Room room : rooms) {
+                Map<String, Room> exits = room.getExits();
+                writeVarint(out, exits.size());
+                for (Map.Entry<String, Room> exit : exits.entrySet()) {
+                    writeVarint(out, ids.get(exit.getValue()));
+                    writeVarint(out, strings.get(exit.getKey()));
+                }
+            }
+            for (Room room : rooms) {
+                List<Thing> contents = room.getContents();
+                writeVarint(out, contents.size());
+                for (Thing thing : contents) {
+                    writeThing(out, thing, strings);
+                }
+            }
+        } catch (IOException ex) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Read a map written by {@link #saveMap(Room, String) saveMap}, which
+     * may since have been gzip or zlib compressed.
+     * <br />Counts are checked against the size of the file, so a corrupt
+     * or truncated file gives null rather than running out of memory.
+     *
+     * @param filename Filename to read from
+     * @return null if unsuccessful, otherwise the same two element array as
+     *         {@link MapIO#loadMap(String) MapIO.loadMap}. The player is not
+     *         added to any room.
+     */
+    public static Object[] loadMap(String filename) {
+        return loadMap(filename, null);
+    }
+
+    /**
+     * Read a map, noting which room the player was in.
+     *
+     * @param filename Filename to read from
+     * @param playerRoom If not null, element 0 is set to the room the
+     *                   player was listed in (null if there is no player)
+     * @return same as {@link #loadMap(String) loadMap}
+     */
+    static Object[] loadMap(String filename, Room[] playerRoom) {
+        try (LimitedInputStream limited = new LimitedInputStream(
+                MapCompression.open(filename),
+                MapCompression.maxOpenedSize(filename))) {
+            DataInputStream in = new DataInputStream(limited);
+            for (byte expected : MAGIC) {
+                if (in.readByte() != expected) {
+                    return null;
+                }
+            }
+            if (in.readUnsignedByte() != VERSION) {
+                return null;
+            }
+            // every string takes at least its length byte
+            String[] strings = new String[limited.check(readVarint(in), 1)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(in);
+            }
+            Room[] rooms = new Room[limited.check(readVarint(in),
+                    MIN_ROOM_BYTES)];
+            if (rooms.length == 0) {
+                return null;
+            }
+            for (int i = 0; i < rooms.length; i++) {
+                rooms[i] = new Room(strings[readVarint(in)]);
+            }
+            for (Room room : rooms) {
+                int count = readVarint(in);
+                for (int j = 0; j < count; j++) {
+                    Room target = rooms[readVarint(in)];
+                    if (!room.loadExit(strings[readVarint(in)], target)) {
+                        return null;
+                    }
+                }
+            }
+            Player player = null;
+            for (Room room : rooms) {
+                int count = readVarint(in);
+                for (int j = 0; j < count; j++) {
+                    Thing thing = readThing(in, strings, rooms[0]);
+                    if (thing == null) {
+                        return null;
+                    }
+                    if (thing instanceof Player) { // not added to rooms
+                        player = (Player) thing;
+                        if (playerRoom != null) {
+                            playerRoom[0] = room;
+                        }
+                    } else {
+                        room.loadThing(thing);
+                    }
+                }
+            }
+            return new Object[]{player, rooms[0]};
+        } catch (IOException ex) {
+            return null;
+        } catch (IndexOutOfBoundsException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Counts the bytes read from a stream, so counts read from it can be
+     * checked against how many bytes could be left.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        // Most bytes which may still be read
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            remaining -= skipped;
+            return skipped;
+        }
+
+        /**
+         * @param count Number of records about to be read
+         * @param minBytes Fewest bytes each record takes
+         * @return count
+         * @throws IOException if the rest of the file is too short to
+         *         hold count records
+         */
+        int check(int count, int minBytes) throws IOException {
+            if ((long) count * minBytes > remaining) {
+                throw new IOException("count " + count
+                        + " is more than the file can hold");
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Convert a text map into a binary map.
+     * The player stays in the room it was in.
+     *
+     * @param textFile Map written by {@link MapIO#saveMap(Room, String)}
+     * @param binaryFile Filename to write the binary map to
+     * @return true if successful
+     */
+    public static boolean textToBinary(String textFile, String binaryFile) {
+        Room[] playerRoom = new Room[1];
+        Room start = placePlayer(MapIO.loadMapMapped(textFile, playerRoom),
+                playerRoom[0]);
+        return start != null && saveMap(start, binaryFile);
+    }
+
+    /**
+     * Convert a binary map into a text map.
+     * The player stays in the room it was in.
+     *
+     * @param binaryFile Map written by {@link #saveMap(Room, String)}
+     * @param textFile Filename to write the text map to
+     * @return true if successful
+     */
+    public static boolean binaryToText(String binaryFile, String textFile) {
+        Room[] playerRoom = new Room[1];
+        Room start = placePlayer(loadMap(binaryFile, playerRoom),
+                playerRoom[0]);
+        return start != null && MapIO.saveMapStreaming(start, textFile);
+    }
+
+    /**
+     * Put a loaded player back into the room it was listed in so it is
+     * saved again in the same place.
+     *
+     * @param loaded result of a load routine
+     * @param room Room the player was listed in
+     * @return start room or null if loading failed
+     */
+    private static Room placePlayer(Object[] loaded, Room room) {
+        if (loaded == null) {
+            return null;
+        }
+        Room start = (Room) loaded[1];
+        if (loaded[0] != null) {
+            ((room != null) ? room : start).enter((Thing) loaded[0]);
+        }
+        return start;
+    }
+
+    /**
+     * Add text to the dictionary if it is not already there.
+     *
+     * @param strings dictionary of strings to their index
+     * @param text String to add
+     */
+    static void intern(Map<String, Integer> strings, String text) {
+        if (!strings.containsKey(text)) {
+            strings.put(text, strings.size());
+        }
+    }
+
+    /**
+     * Add the strings a Thing record refers to to the dictionary.
+     *
+     * @param strings dictionary of strings to their index
+     * @param thing Thing which will be written
+     */
+    static void internThing(Map<String, Integer> strings, Thing thing) {
+        if (thing instanceof Treasure) {
+            intern(strings, thing.getShort());
+        } else if (thing instanceof Critter || thing instanceof Explorer) {
+            intern(strings, thing.getShort());
+            intern(strings, thing.getLong());
+        } else {
+            intern(strings, thing.repr());
+        }
+    }
+
+    /**
+     * Write a Thing record: a tag byte followed by its fields.
+     * <ul><li>$: value, short description</li>
+     *     <li>C: value, health, short description, long description</li>
+     *     <li>E: health, short description, long description</li>
+     *     <li>R: repr() of any other Thing</li></ul>
+     *
+     * @param out Destination
+     * @param thing Thing to write
+     * @param strings dictionary holding every string the record refers to
+     * @throws IOException if out fails
+     */
+    static void writeThing(DataOutput out, Thing thing,
+            Map<String, Integer> strings) throws IOException {
+        if (thing instanceof Treasure) {
+            out.writeByte(TREASURE);
+            out.writeDouble(((Treasure) thing).getValue());
+            writeVarint(out, strings.get(thing.getShort()));
+        } else if (thing instanceof Critter) {
+            Critter critter = (Critter) thing;
+            out.writeByte(CRITTER);
+            out.writeDouble(critter.getValue());
+            writeSignedVarint(out, critter.getHealth());
+            writeVarint(out, strings.get(thing.getShort()));
+            writeVarint(out, strings.get(thing.getLong()));
+        } else if (thing instanceof Explorer) {
+            out.writeByte(EXPLORER);
+            writeSignedVarint(out, ((Explorer) thing).getHealth());
+            writeVarint(out, strings.get(thing.getShort()));
+            writeVarint(out, strings.get(thing.getLong()));
+        } else {
+            out.writeByte(REPR);
+            writeVarint(out, strings.get(thing.repr()));
+        }
+    }
+
+    /**
+     * Read a record written by {@link #writeThing(DataOutput, Thing, Map)}.
+     *
+     * @param in Source
+     * @param strings dictionary the record refers to
+     * @param root start room (passed on to {@link MapIO#decodeThing})
+     * @return decoded Thing or null if the record is not valid
+     * @throws IOException if in fails
+     */
+    static Thing readThing(DataInput in, String[] strings, Room root)
+            throws IOException {
+        switch (in.readUnsignedByte()) {
+        case TREASURE: {
+            double value = in.readDouble();
+            return new Treasure(strings[readVarint(in)], value);
+        }
+        case CRITTER: {
+            double value = in.readDouble();
+            int health = readSignedVarint(in);
+            String shortDescription = strings[readVarint(in)];
+            return new Critter(shortDescription, strings[readVarint(in)],
+                    value, health);
+        }
+        case EXPLORER: {
+            int health = readSignedVarint(in);
+            String shortDescription = strings[readVarint(in)];
+            return new Explorer(shortDescription, strings[readVarint(in)],
+                    health);
+        }
+        case REPR:
+            return MapIO.decodeThing(strings[readVarint(in)], root);
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Write a non-negative int as an unsigned LEB128 varint.
+     *
+     * @param out Destination
+     * @param value Value to write
+     * @throws IOException if out fails
+     */
+    static void writeVarint(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Read an unsigned LEB128 varint holding a non-negative int.
+     *
+     * @param in Source
+     * @return decoded value
+     * @throws IOException if in fails or the varint is malformed
+     */
+    static int readVarint(DataInput in) throws IOException {
+        int value = readRawVarint(in);
+        if (value < 0) {
+            throw new IOException("varint out of range");
+        }
+        return value;
+    }
+
+    /**
+     * Read the 32 bits of an unsigned LEB128 varint.
+     */
+    private static int readRawVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    /**
+     * Write an int as a zig-zag encoded varint.
+     *
+     * @param out Destination
+     * @param value Value to write
+     * @throws IOException if out fails
+     */
+    static void writeSignedVarint(DataOutput out, int value)
+            throws IOException {
+        writeVarint(out, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Read a zig-zag encoded varint.
+     *
+     * @param in Source
+     * @return decoded value
+     * @throws IOException if in fails
+     */
+    static int readSignedVarint(DataInput in) throws IOException {
+        int raw = readRawVarint(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * Write a String as a varint byte length followed by UTF-8 bytes.
+     *
+     * @param out Destination
+     * @param text String to write
+     * @throws IOException if out fails
+     */
+    static void writeString(DataOutput out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a String written by {@link #writeString(DataOutput, String)}.
+     *
+     * @param in Source
+     * @return decoded String
+     * @throws IOException if in fails or ends before the whole String
+     */
+    static String readString(DataInput in) throws IOException {
+        int length = readVarint(in);
+        // grow the buffer as bytes arrive rather than trusting length
+        byte[] bytes = new byte[Math.min(length, STRING_CHUNK)];
+        int read = 0;
+        while (true) {
+            in.readFully(bytes, read, bytes.length - read);
+            read = bytes.length;
+            if (read == length) {
+                break;
+            }
+            bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
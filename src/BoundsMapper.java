@@ -1,11 +1,31 @@
 import java.util.*;
 
 /** Find the bounding box for the overall map.
+* <br />Coordinates are kept in a table indexed by room id; coords is a
+*    Map view of that table rather than a HashMap of Pairs. It can still
+*    be changed (put, remove and clear write through to the table), but
+*    the Pairs it hands out are copies: changing the x or y of one does
+*    not move its room, put a new Pair instead. Null rooms and Pairs can
+*    not be stored.
 * @author JF
 */
 public class BoundsMapper extends MapWalker {
-  /** Map Rooms to coordinates*/
+  // Order in which neighbours are checked
+  private static final Direction[] NEIGHBOURS = Direction.values();
+  // Position of rooms which have not been given coordinates
+  private static final long UNPLACED = Long.MIN_VALUE;
+
+  /** Map Rooms to coordinates.
+  * A view of the coordinates found by the last walk, in the order the
+  * rooms were visited (see the class comment).
+  * getX(Room) and getY(Room) avoid creating a Pair.
+  */
   public Map<Room, Pair> coords;
+
+  // Coordinates of each room: x in the high 32 bits, y in the low
+  private RoomLongTable positions;
+  // Rooms which have coordinates, in the order they were visited
+  private List<Room> rooms;
   
   /** Minimum x coordinate for rooms (root has x=0) */
   public int xMin;
@@ -21,9 +41,42 @@ public class BoundsMapper extends MapWalker {
   
   public BoundsMapper(Room root) {
     super(root);
-    coords = new HashMap<Room, Pair>();
+    positions = new RoomLongTable(UNPLACED);
+    rooms = new ArrayList<Room>();
+    coords = new CoordsView();
     xMin = xMax = yMin = yMax = 0;    
   }
+
+  /**
+  * @return number of rooms with coordinates
+  */
+  public int roomCount() {
+    return rooms.size();
+  }
+
+  /**
+  * @param index Position in visiting order, less than roomCount()
+  * @return the room visited at that position
+  */
+  public Room getRoom(int index) {
+    return rooms.get(index);
+  }
+
+  /**
+  * @param room Room which has coordinates
+  * @return x coordinate of room
+  */
+  public int getX(Room room) {
+    return (int) (positions.get(room) >> 32);
+  }
+
+  /**
+  * @param room Room which has coordinates
+  * @return y coordinate of room
+  */
+  public int getY(Room room) {
+    return (int) positions.get(room);
+  }
   
   /** Assign room coordinates relative to a neighbour.
   * <br />If room has no known neighbours, give it coordinate (0,0).<br /> 
@@ -40,41 +93,153 @@ public class BoundsMapper extends MapWalker {
   * 
   */
   protected void visit(Room room) {
-    Map<String, Room> exits = room.getExits();
-    Pair n = null;
-    if (hasVisited(exits.get("North"))) {
-        Pair p = coords.get(exits.get("North"));
-        n = new Pair(p.x,p.y + 1);  // remember screen coords flipped
-    } else if (hasVisited(exits.get("South"))) {
-        Pair p = coords.get(exits.get("South"));
-        n = new Pair(p.x,p.y - 1);  // remember screen coords flipped
-    } else if (hasVisited(exits.get("East"))) {
-        Pair p = coords.get(exits.get("East"));
-        n = new Pair(p.x - 1,p.y);
-    } else if (hasVisited(exits.get("West"))) {
-        Pair p = coords.get(exits.get("West"));
-        n = new Pair(p.x + 1,p.y);
-    } else {
-        // can't be sure where we are, assume 0, 0
-        n = new Pair(0,0);
+    // can't be sure where we are unless a neighbour is placed, assume 0, 0
+    int x = 0;
+    int y = 0;
+    for (Direction direction : NEIGHBOURS) {
+      Room neighbour = room.getExit(direction);
+      long p = positions.get(neighbour);
+      if (p != UNPLACED) {
+        // step back from the neighbour (screen coords are flipped)
+        x = (int) (p >> 32) - direction.dx();
+        y = (int) p - direction.dy();
+        break;
+      }
+    }
+    put(room, x, y);
+  }
+
+  /** Give coordinates to a room the last walk did not reach, such as one
+  *    linked in since, without walking again.
+  * @param room Room to place
+  * @param x x coordinate of room
+  * @param y y coordinate of room
+  * @return false (and room keeps its coordinates) if room already has some
+  */
+  public boolean place(Room room, int x, int y) {
+    if (positions.get(room) != UNPLACED) {
+      return false;
     }
-    coords.put(room, n);
-    if (n.x < xMin) {
-      xMin = n.x;
-    } else if (n.x > xMax) {
-      xMax = n.x;
+    put(room, x, y);
+    return true;
+  }
+
+  /** Record the coordinates of a room and widen the bounds to take them.
+  */
+  private void put(Room room, int x, int y) {
+    positions.put(room, ((long) x << 32) | (y & 0xffffffffL));
+    rooms.add(room);
+    if (x < xMin) {
+      xMin = x;
+    } else if (x > xMax) {
+      xMax = x;
     }
-    if (n.y < yMin) {
-      yMin = n.y;
-    } else if (n.y > yMax) {
-      yMax = n.y;
+    if (y < yMin) {
+      yMin = y;
+    } else if (y > yMax) {
+      yMax = y;
     }
   }
 
   @Override 
   public void reset() {
     super.reset();
-    coords = new HashMap<Room, Pair>();
+    positions.clear();
+    rooms.clear();
     xMin = xMax = yMin = yMax = 0;    
   }
+
+  /** Map view of positions, making Pairs as they are asked for.
+  * Like a HashMap changed directly, changes made through it do not move
+  *    the bounds.
+  */
+  private class CoordsView extends AbstractMap<Room, Pair> {
+    @Override
+    public Pair get(Object key) {
+      if (!(key instanceof Room)) {
+        return null;
+      }
+      long p = positions.get((Room) key);
+      return (p == UNPLACED) ? null : new Pair((int) (p >> 32), (int) p);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return (key instanceof Room) && positions.get((Room) key) != UNPLACED;
+    }
+
+    @Override
+    public int size() {
+      return rooms.size();
+    }
+
+    @Override
+    public Pair put(Room room, Pair pair) {
+      Pair old = get(Objects.requireNonNull(room));
+      positions.put(room, ((long) pair.x << 32) | (pair.y & 0xffffffffL));
+      if (old == null) {
+        rooms.add(room);
+      }
+      return old;
+    }
+
+    @Override
+    public Pair remove(Object key) {
+      Pair old = get(key);
+      if (old != null) {
+        positions.put((Room) key, UNPLACED);
+        rooms.remove(key);
+      }
+      return old;
+    }
+
+    @Override
+    public void clear() {
+      positions.clear();
+      rooms.clear();
+    }
+
+    @Override
+    public Set<Map.Entry<Room, Pair>> entrySet() {
+      return new AbstractSet<Map.Entry<Room, Pair>>() {
+        @Override
+        public Iterator<Map.Entry<Room, Pair>> iterator() {
+          final Iterator<Room> visited = rooms.iterator();
+          return new Iterator<Map.Entry<Room, Pair>>() {
+            // Room of the entry last returned
+            private Room last;
+
+            @Override
+            public boolean hasNext() {
+              return visited.hasNext();
+            }
+
+            @Override
+            public Map.Entry<Room, Pair> next() {
+              last = visited.next();
+              return new AbstractMap.SimpleEntry<Room, Pair>(last,
+                  new Pair(getX(last), getY(last))) {
+                @Override
+                public Pair setValue(Pair pair) {
+                  super.setValue(pair);
+                  return put(getKey(), pair);
+                }
+              };
+            }
+
+            @Override
+            public void remove() {
+              visited.remove();
+              positions.put(last, UNPLACED);
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return rooms.size();
+        }
+      };
+    }
+  }
 }
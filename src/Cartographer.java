@@ -1,15 +1,22 @@
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 
-import java.util.HashMap;
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.function.Consumer;
 
 
 /**
  * The map of a dungeon adventure game.
+ * <br />The map listens to its rooms and the Critters in them, and
+ * remembers which cells of the map have changed, so an update only
+ * redraws those cells and the doors reaching into them.
  */
-public class Cartographer extends Canvas {
+public class Cartographer extends Canvas implements MapListener, Closeable {
 
     // Size (in pixels) of the rooms drawn to the map
     private static final int ROOM_SIZE = 50;
@@ -20,15 +27,36 @@ public class Cartographer extends Canvas {
     // Canvas graphics renderer
     private GraphicsContext graphics;
 
+    // Directions exits can be drawn in
+    private static final Direction[] DIRECTIONS = Direction.values();
+
     // Map cardinal directions to positions exits in that direction should be
     // drawn relative to the rooms position
-    private Map<String, int[]> exitPositions = new HashMap<>();
+    private Map<Direction, int[]> exitPositions =
+            new EnumMap<>(Direction.class);
 
     // Map of the current level
     private BoundsMapper map;
     // Offsets to account for rooms in negative coordinates
     private int xOffset;
     private int yOffset;
+    // Pixel position of the room being drawn
+    private int startX;
+    private int startY;
+    // Draws each Thing in the room being drawn (kept so that drawing a
+    // room does not create any objects)
+    private final Consumer<Thing> thingDrawer = this::drawThing;
+    // Number of cells across the map
+    private int columns;
+    // Rooms drawn in each cell of the map, by cell number (see cell());
+    // null for empty cells
+    private Room[][] cells;
+    // Room each watched Critter was last seen entering
+    private final Map<Thing, Room> critters = new IdentityHashMap<>();
+    // Numbers of the cells which have changed since the last update
+    private final BitSet changed = new BitSet();
+    // Has the whole map been drawn?
+    private boolean drawn;
 
     /**
      * Construct a new Cartographer representing all rooms expanding from the
@@ -40,13 +68,13 @@ public class Cartographer extends Canvas {
         super();
 
         // Load the positions exits should be drawn
-        exitPositions.put("North", new int[]{ROOM_WIDTH, -DOOR_WIDTH,
+        exitPositions.put(Direction.NORTH, new int[]{ROOM_WIDTH, -DOOR_WIDTH,
                 ROOM_WIDTH, DOOR_WIDTH});
-        exitPositions.put("East", new int[]{ROOM_SIZE - DOOR_WIDTH,
+        exitPositions.put(Direction.EAST, new int[]{ROOM_SIZE - DOOR_WIDTH,
                 ROOM_WIDTH, ROOM_SIZE + DOOR_WIDTH, ROOM_WIDTH});
-        exitPositions.put("West", new int[]{-DOOR_WIDTH, ROOM_WIDTH,
+        exitPositions.put(Direction.WEST, new int[]{-DOOR_WIDTH, ROOM_WIDTH,
                 DOOR_WIDTH, ROOM_WIDTH});
-        exitPositions.put("South", new int[]{ROOM_WIDTH,
+        exitPositions.put(Direction.SOUTH, new int[]{ROOM_WIDTH,
                 ROOM_SIZE - DOOR_WIDTH, ROOM_WIDTH,
                 ROOM_SIZE + DOOR_WIDTH});
 
@@ -65,70 +93,292 @@ public class Cartographer extends Canvas {
         // Calculate the offset to account for negative coordinates
         xOffset = Math.abs(map.xMin) * ROOM_SIZE;
         yOffset = Math.abs(map.yMin) * ROOM_SIZE;
+
+        // Find the rooms in each cell, and listen for changes to the rooms
+        // and the critters in them
+        columns = map.xMax - map.xMin + 1;
+        cells = new Room[columns * (map.yMax - map.yMin + 1)][];
+        for (int i = 0; i < map.roomCount(); i++) {
+            Room room = map.getRoom(i);
+            int cell = cell(map.getX(room), map.getY(room));
+            Room[] rooms = cells[cell];
+            if (rooms == null) {
+                cells[cell] = new Room[] {room};
+            } else {
+                // several rooms in one cell are drawn over each other
+                rooms = Arrays.copyOf(rooms, rooms.length + 1);
+                rooms[rooms.length - 1] = room;
+                cells[cell] = rooms;
+            }
+            room.addListener(this);
+            for (Thing thing : room.getContents()) {
+                watch(room, thing);
+            }
+        }
     }
 
     /**
      * Draw the representation of a Room to a JavaFX graphics context.
      *
      * @param room The room to draw to the graphics context
-     * @param location The location relative to the canvas to draw the room
+     * @param x The column relative to the canvas to draw the room
+     * @param y The row relative to the canvas to draw the room
      */
-    private void drawRoom(Room room, Pair location) {
+    private void drawRoom(Room room, int x, int y) {
         // Calculate the pixel position the room should be drawn
-        int startX = (location.x * ROOM_SIZE) + xOffset;
-        int startY = (location.y * ROOM_SIZE) + yOffset;
+        startX = (x * ROOM_SIZE) + xOffset;
+        startY = (y * ROOM_SIZE) + yOffset;
 
         // Draw a rectangle representing the room
         graphics.strokeRect(startX, startY, ROOM_SIZE, ROOM_SIZE);
 
         // Draw the doors for each room exit
-        for (String direction : room.getExits().keySet()) {
-            int[] position = exitPositions.get(direction);
-            if (position == null) {
-                continue;
+        for (Direction direction : DIRECTIONS) {
+            if (room.getExit(direction) != null) {
+                drawDoor(direction, startX, startY);
             }
-            graphics.strokeLine(position[0] + startX, position[1] + startY,
-                    position[2] + startX, position[3] + startY);
         }
 
         // Draw representations for each of the items in the room
-        for (Thing thing : room.getContents()) {
-            // Draw a player representation
-            if (thing instanceof Player) {
-                graphics.strokeText("@", startX + 4, startY + 12);
+        room.forEachThing(thingDrawer);
+    }
+
+    /**
+     * Draw a door, which reaches DOOR_WIDTH into the next cell.
+     *
+     * @param direction Direction of the exit
+     * @param roomX Pixel position of the room's left edge
+     * @param roomY Pixel position of the room's top edge
+     */
+    private void drawDoor(Direction direction, int roomX, int roomY) {
+        int[] position = exitPositions.get(direction);
+        graphics.strokeLine(position[0] + roomX, position[1] + roomY,
+                position[2] + roomX, position[3] + roomY);
+    }
+
+    /**
+     * Draw the representation of a Thing in the room being drawn.
+     *
+     * @param thing The thing to draw to the graphics context
+     */
+    private void drawThing(Thing thing) {
+        // Draw a player representation
+        if (thing instanceof Player) {
+            graphics.strokeText("@", startX + 4, startY + 12);
+        }
+        // Draw a treasure representation
+        if (thing instanceof Treasure) {
+            graphics.strokeText("$", startX + 4 + ROOM_WIDTH,
+                    startY + 12);
+        }
+        // Draw a critter representation
+        if (thing instanceof Critter) {
+            Critter critter = (Critter) thing;
+            if (critter.isAlive()) {
+                // Draw an alive critter
+                graphics.strokeText("M", startX + 4,
+                        startY + 12 + ROOM_WIDTH);
+            } else {
+                // Draw a dead critter
+                graphics.strokeText("m", startX + 4 + ROOM_WIDTH,
+                        startY + 12 + ROOM_WIDTH);
+            }
+        }
+    }
+
+    /**
+     * Redraw the JavaFX display of the map.
+     * The first call draws every room; after that only the cells which
+     * have changed since the last update are redrawn.
+     */
+    public void update() {
+        if (!drawn) {
+            // Clear the previous map view
+            graphics.clearRect(0, 0, getWidth(), getHeight());
+
+            // Draw all the rooms in the map
+            for (int i = 0; i < map.roomCount(); i++) {
+                Room room = map.getRoom(i);
+                drawRoom(room, map.getX(room), map.getY(room));
             }
-            // Draw a treasure representation
-            if (thing instanceof Treasure) {
-                graphics.strokeText("$", startX + 4 + ROOM_WIDTH,
-                        startY + 12);
+            drawn = true;
+            changed.clear();
+            return;
+        }
+
+        // Clear every changed cell up to its right and bottom walls first,
+        // so nothing drawn below is cleared again (this takes the inside
+        // edge off those walls, which is drawn again with the cell)
+        for (int cell = changed.nextSetBit(0); cell >= 0;
+                cell = changed.nextSetBit(cell + 1)) {
+            graphics.clearRect((cellX(cell) * ROOM_SIZE) + xOffset + 1,
+                    (cellY(cell) * ROOM_SIZE) + yOffset + 1,
+                    ROOM_SIZE - 1, ROOM_SIZE - 1);
+        }
+        for (int cell = changed.nextSetBit(0); cell >= 0;
+                cell = changed.nextSetBit(cell + 1)) {
+            int x = cellX(cell);
+            int y = cellY(cell);
+            if (cells[cell] != null) {
+                for (Room room : cells[cell]) {
+                    drawRoom(room, x, y);
+                }
+            } else {
+                drawNeighbourWalls(x, y);
             }
-            // Draw a critter representation
-            if (thing instanceof Critter) {
-                Critter critter = (Critter) thing;
-                if (critter.isAlive()) {
-                    // Draw an alive critter
-                    graphics.strokeText("M", startX + 4,
-                            startY + 12 + ROOM_WIDTH);
-                } else {
-                    // Draw a dead critter
-                    graphics.strokeText("m", startX + 4 + ROOM_WIDTH,
-                            startY + 12 + ROOM_WIDTH);
+            // Draw again the doors of unchanged neighbours which reach
+            // into this cell
+            for (Direction direction : DIRECTIONS) {
+                int next = cell(x + direction.dx(), y + direction.dy());
+                if (next < 0 || cells[next] == null || changed.get(next)) {
+                    continue;
+                }
+                for (Room neighbour : cells[next]) {
+                    if (neighbour.getExit(direction.opposite()) != null) {
+                        drawDoor(direction.opposite(),
+                                (cellX(next) * ROOM_SIZE) + xOffset,
+                                (cellY(next) * ROOM_SIZE) + yOffset);
+                    }
                 }
             }
         }
+        changed.clear();
     }
 
     /**
-     * Redraw the JavaFX display of the map.
+     * Draw the right and bottom walls of an empty cell, where they belong
+     * to the rooms next to it.
+     *
+     * @param x Column of the cell
+     * @param y Row of the cell
      */
-    public void update() {
-        // Clear the previous map view
-        graphics.clearRect(0, 0, getWidth(), getHeight());
+    private void drawNeighbourWalls(int x, int y) {
+        int right = ((x + 1) * ROOM_SIZE) + xOffset;
+        int bottom = ((y + 1) * ROOM_SIZE) + yOffset;
+        int next = cell(x + 1, y);
+        if (next >= 0 && cells[next] != null) {
+            graphics.strokeLine(right, bottom - ROOM_SIZE, right, bottom);
+        }
+        next = cell(x, y + 1);
+        if (next >= 0 && cells[next] != null) {
+            graphics.strokeLine(right - ROOM_SIZE, bottom, right, bottom);
+        }
+    }
 
-        // Draw all the rooms in the map
-        for (Entry<Room, Pair> entry : map.coords.entrySet()) {
-            drawRoom(entry.getKey(), entry.getValue());
+    /**
+     * Stop listening to the rooms and Critters, so that they no longer
+     * hold on to a map which is not shown any more. Changes made after
+     * this are not drawn by update().
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < map.roomCount(); i++) {
+            map.getRoom(i).removeListener(this);
+        }
+        for (Thing critter : critters.keySet()) {
+            critter.removeListener(this);
         }
+        critters.clear();
+        changed.clear();
+    }
+
+    @Override
+    public void thingEntered(Room room, Thing thing) {
+        changed(room);
+        watch(room, thing);
+    }
+
+    @Override
+    public void thingLeft(Room room, Thing thing) {
+        changed(room);
+    }
+
+    @Override
+    public void exitAdded(Room room, String label, Room target) {
+        changedDoor(room, label);
+    }
+
+    @Override
+    public void exitRemoved(Room room, String label) {
+        changedDoor(room, label);
+    }
+
+    @Override
+    public void healthChanged(Mob mob) {
+        Room room = critters.get(mob);
+        if (room != null) {
+            changed(room);
+        }
+    }
+
+    /**
+     * Follow the health of a Critter, which is drawn in its room.
+     *
+     * @param room Room the thing is in
+     * @param thing Thing in the room
+     */
+    private void watch(Room room, Thing thing) {
+        if (thing instanceof Critter && critters.put(thing, room) == null) {
+            thing.addListener(this);
+        }
+    }
+
+    /**
+     * Remember that a room's cell needs drawing again.
+     *
+     * @param room Room which changed
+     */
+    private void changed(Room room) {
+        if (map.coords.containsKey(room)) {
+            changed.set(cell(map.getX(room), map.getY(room)));
+        }
+    }
+
+    /**
+     * Remember that a room's cell, and the cell its door in that
+     * direction reaches into (which may have no room), need drawing again.
+     *
+     * @param room Room whose exit changed
+     * @param label Name of the exit
+     */
+    private void changedDoor(Room room, String label) {
+        changed(room);
+        Direction direction = Direction.fromLabel(label);
+        if (direction != null && map.coords.containsKey(room)) {
+            int next = cell(map.getX(room) + direction.dx(),
+                    map.getY(room) + direction.dy());
+            if (next >= 0) {
+                changed.set(next);
+            }
+        }
+    }
+
+    /**
+     * @param x Column of a cell
+     * @param y Row of a cell
+     * @return number of the cell, or -1 if it is outside the map
+     */
+    private int cell(int x, int y) {
+        if (x < map.xMin || x > map.xMax || y < map.yMin || y > map.yMax) {
+            return -1;
+        }
+        return (x - map.xMin) + ((y - map.yMin) * columns);
+    }
+
+    /**
+     * @param cell Number of a cell
+     * @return column of the cell
+     */
+    private int cellX(int cell) {
+        return (cell % columns) + map.xMin;
+    }
+
+    /**
+     * @param cell Number of a cell
+     * @return row of the cell
+     */
+    private int cellY(int cell) {
+        return (cell / columns) + map.yMin;
     }
 
 }
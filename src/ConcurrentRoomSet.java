@@ -0,0 +1,124 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link RoomSet RoomSet} which several threads can add to at once.
+ * <br />Bits are set with compare and swap, so exactly one of the threads
+ * adding the same Room sees add return true. Pages are created under a
+ * lock, which is only taken once per page.
+ */
+final class ConcurrentRoomSet {
+
+    // Number of id bits which select a bit within a page
+    private static final int PAGE_BITS = 12;
+    // Number of longs in a page
+    private static final int PAGE_WORDS = (1 << PAGE_BITS) / Long.SIZE;
+
+    // Pages of bits, indexed by id >>> PAGE_BITS (replaced when it grows)
+    private volatile AtomicReferenceArray<AtomicLongArray> pages;
+
+    /**
+     * Make an empty set. The directory of pages grows to cover the ids of
+     * the Rooms added, so a set of the rooms of a small map stays small.
+     */
+    ConcurrentRoomSet() {
+        pages = new AtomicReferenceArray<AtomicLongArray>(1);
+    }
+
+    /**
+     * Add a Room.
+     *
+     * @param room Room to add
+     * @return true if room was not already in the set
+     * @throws NullPointerException if room is null
+     */
+    boolean add(Room room) {
+        int id = room.getId();
+        AtomicLongArray page = page(id);
+        int word = (id >>> 6) & (PAGE_WORDS - 1);
+        long bit = 1L << id;
+        while (true) {
+            long bits = page.get(word);
+            if ((bits & bit) != 0) {
+                return false;
+            }
+            if (page.compareAndSet(word, bits, bits | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param room Room to look for (may be null)
+     * @return true if room is in the set
+     */
+    boolean contains(Room room) {
+        if (room == null) {
+            return false;
+        }
+        int id = room.getId();
+        int index = id >>> PAGE_BITS;
+        AtomicReferenceArray<AtomicLongArray> current = pages;
+        AtomicLongArray page = (index < current.length())
+                ? current.get(index) : null;
+        if (page == null) {
+            // may have been created since, possibly in a larger directory
+            page = existingPage(index);
+            if (page == null) {
+                return false;
+            }
+        }
+        return (page.get((id >>> 6) & (PAGE_WORDS - 1)) & (1L << id)) != 0;
+    }
+
+    /**
+     * @param id Room id
+     * @return the page holding id's bit, created if needed
+     */
+    private AtomicLongArray page(int id) {
+        int index = id >>> PAGE_BITS;
+        AtomicReferenceArray<AtomicLongArray> current = pages;
+        if (index < current.length()) {
+            AtomicLongArray page = current.get(index);
+            if (page != null) {
+                return page;
+            }
+        }
+        return createPage(index);
+    }
+
+    /**
+     * @param index Page index
+     * @return the page or null if it has not been created
+     */
+    private synchronized AtomicLongArray existingPage(int index) {
+        return (index < pages.length()) ? pages.get(index) : null;
+    }
+
+    /**
+     * Create a page (and grow the directory) unless another thread
+     * already has.
+     *
+     * @param index Page index
+     * @return the page
+     */
+    private synchronized AtomicLongArray createPage(int index) {
+        AtomicReferenceArray<AtomicLongArray> current = pages;
+        if (index >= current.length()) {
+            AtomicReferenceArray<AtomicLongArray> larger =
+                    new AtomicReferenceArray<AtomicLongArray>(
+                            Math.max(index + 1, current.length() * 2));
+            for (int i = 0; i < current.length(); i++) {
+                larger.set(i, current.get(i));
+            }
+            pages = larger;
+            current = larger;
+        }
+        AtomicLongArray page = current.get(index);
+        if (page == null) {
+            page = new AtomicLongArray(PAGE_WORDS);
+            current.set(index, page);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,327 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractSequentialList;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Contents of a {@link Room Room}: Things in the order they were added.
+ * <br />Things are held in a doubly linked list. Once a room holds more
+ * than a few Things an identity index from each Thing to its node is
+ * kept as well, so contains, add and remove take constant time however
+ * full the room gets. Small rooms, which are most of them, just scan.
+ * <br />Through the List interface this is read only (Room hands out an
+ * unmodifiable view anyway); only Room changes it.
+ *
+ * @serial exclude
+ */
+class ContentsList extends AbstractSequentialList<Thing>
+        implements Serializable {
+
+    // Version of the serialized form
+    private static final long serialVersionUID = 1L;
+
+    // Size above which the identity index is kept
+    private static final int INDEX_THRESHOLD = 8;
+
+    /**
+     * A Thing in the list.
+     */
+    private static final class Node {
+        // The Thing
+        private final Thing thing;
+        // Previous node (null at the head)
+        private Node previous;
+        // Next node (null at the tail)
+        private Node next;
+        // Position of the Thing in the room's LivingMobs (-1 if not there)
+        private int living = -1;
+
+        Node(Thing thing) {
+            this.thing = thing;
+        }
+    }
+
+    // First node (null if empty)
+    private transient Node head;
+    // Last node (null if empty)
+    private transient Node tail;
+    // Number of Things
+    private transient int size;
+    // Node of each Thing (null while the list is small)
+    private transient Map<Thing, Node> index;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object thing) {
+        return find(thing) != null;
+    }
+
+    /**
+     * Add a Thing at the end. Does not check whether it is already here.
+     *
+     * @param thing Thing to add
+     * @return true
+     */
+    @Override
+    public boolean add(Thing thing) {
+        Node node = new Node(thing);
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+            node.previous = tail;
+        }
+        tail = node;
+        size++;
+        modCount++;
+        if (index != null) {
+            index.put(thing, node);
+        } else if (size > INDEX_THRESHOLD) {
+            buildIndex();
+        }
+        return true;
+    }
+
+    /**
+     * Remove a Thing.
+     *
+     * @param thing Thing to remove
+     * @return true if it was here
+     */
+    @Override
+    public boolean remove(Object thing) {
+        Node node = (index != null) ? index.remove(thing) : find(thing);
+        if (node == null) {
+            return false;
+        }
+        if (node.previous == null) {
+            head = node.next;
+        } else {
+            node.previous.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.previous;
+        } else {
+            node.next.previous = node.previous;
+        }
+        size--;
+        modCount++;
+        if (index != null && size <= INDEX_THRESHOLD / 2) {
+            // small again, scanning is cheaper than keeping the index
+            index = null;
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        head = tail = null;
+        size = 0;
+        index = null;
+        modCount++;
+    }
+
+    /**
+     * Walk the nodes directly rather than through an iterator.
+     *
+     * @throws ConcurrentModificationException if action changes the list
+     */
+    @Override
+    public void forEach(Consumer<? super Thing> action) {
+        int expected = modCount;
+        for (Node node = head; node != null; node = node.next) {
+            action.accept(node.thing);
+            if (modCount != expected) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    @Override
+    public ListIterator<Thing> listIterator(int position) {
+        if (position < 0 || position > size) {
+            throw new IndexOutOfBoundsException("Index: " + position);
+        }
+        return new ContentsIterator(position);
+    }
+
+    /**
+     * @param thing Thing to look for
+     * @return position of thing in the room's LivingMobs, or -1 if it is
+     *         not there (or not in this list)
+     */
+    int livingPosition(Thing thing) {
+        Node node = find(thing);
+        return (node != null) ? node.living : -1;
+    }
+
+    /**
+     * Record where a Thing in this list is in the room's LivingMobs.
+     *
+     * @param thing Thing in this list
+     * @param position Its position in LivingMobs, or -1 if not there
+     */
+    void setLivingPosition(Thing thing, int position) {
+        // usually the Thing which has just been added
+        Node node = (tail != null && tail.thing == thing) ? tail
+                : find(thing);
+        if (node != null) {
+            node.living = position;
+        }
+    }
+
+    /**
+     * @param thing Thing to look for
+     * @return the node holding thing or null if it is not here
+     */
+    private Node find(Object thing) {
+        if (index != null) {
+            return index.get(thing);
+        }
+        for (Node node = head; node != null; node = node.next) {
+            if (node.thing == thing) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Start keeping the identity index.
+     */
+    private void buildIndex() {
+        index = new IdentityHashMap<Thing, Node>(size * 2);
+        for (Node node = head; node != null; node = node.next) {
+            index.put(node.thing, node);
+        }
+    }
+
+    /**
+     * Read only iterator over the nodes.
+     */
+    private class ContentsIterator implements ListIterator<Thing> {
+        // Node returned by next() (null at the end)
+        private Node next;
+        // Index of next
+        private int nextIndex;
+        // Modification count the iterator expects
+        private final int expected = modCount;
+
+        ContentsIterator(int position) {
+            nextIndex = position;
+            if (position < size / 2) {
+                next = head;
+                for (int i = 0; i < position; i++) {
+                    next = next.next;
+                }
+            } else {
+                next = null;
+                for (int i = size; i > position; i--) {
+                    next = (next == null) ? tail : next.previous;
+                }
+            }
+        }
+
+        /**
+         * Fail if the list has changed since the iterator was created.
+         */
+        private void check() {
+            if (modCount != expected) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex < size;
+        }
+
+        @Override
+        public Thing next() {
+            check();
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Thing thing = next.thing;
+            next = next.next;
+            nextIndex++;
+            return thing;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return nextIndex > 0;
+        }
+
+        @Override
+        public Thing previous() {
+            check();
+            if (nextIndex == 0) {
+                throw new NoSuchElementException();
+            }
+            next = (next == null) ? tail : next.previous;
+            nextIndex--;
+            return next.thing;
+        }
+
+        @Override
+        public int nextIndex() {
+            return nextIndex;
+        }
+
+        @Override
+        public int previousIndex() {
+            return nextIndex - 1;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void set(Thing thing) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void add(Thing thing) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Write the Things in order (rather than the nodes, which would
+     * recurse once per Thing).
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (Node node = head; node != null; node = node.next) {
+            out.writeObject(node.thing);
+        }
+    }
+
+    /**
+     * Rebuild the list from the Things written by writeObject.
+     */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            add((Thing) in.readObject());
+        }
+    }
+}
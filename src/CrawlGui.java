@@ -9,6 +9,7 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -58,6 +59,10 @@ public class CrawlGui extends Application {
     private Room currentRoom;
     // The player of the current game
     private Player player;
+    // Should saves start a journal rather than write the whole map?
+    private boolean journaling;
+    // Journal saves to its file are appended to (null if there is none)
+    private MapJournal journal;
 
     /**
      * Create a new grid pane and load direction buttons into the frame with
@@ -73,8 +78,8 @@ public class CrawlGui extends Application {
         for (int i = 0; i < DIRECTION_COUNT; i++) {
             buttons[i] = new Button(BUTTONS[i]);
             // Assign a button callback
-            buttons[i].setOnAction((event) ->
-                    move(((Button) event.getSource()).getText()));
+            Direction direction = Direction.fromLabel(BUTTONS[i]);
+            buttons[i].setOnAction((event) -> move(direction));
             // Add button to the grid
             buttonLocation = BUTTON_POSITIONS[i];
             directionButtons.add(buttons[i], buttonLocation.x, buttonLocation.y);
@@ -142,10 +147,10 @@ public class CrawlGui extends Application {
      * Fail and display errors if there is no room in that direction or
      * the player is prevented from leaving the current room.
      *
-     * @param direction The direction to walk. One of North, South, East or West
+     * @param direction The direction to walk
      */
-    private void move(String direction) {
-        Room nextRoom = currentRoom.getExits().get(direction);
+    private void move(Direction direction) {
+        Room nextRoom = currentRoom.getExit(direction);
         // Check a room in the direction exists
         if (nextRoom == null) {
             display("No door that way");
@@ -281,11 +286,34 @@ public class CrawlGui extends Application {
 
     /**
      * Ask the user to enter a filename to save to and save the current map.
+     *
+     * Saves to a map which has a journal only append the rooms which have
+     * changed. Other saves write the whole map; when started with
+     * --journal they also start a journal for that file.
      */
     private void save() {
         String file = ask("Save filename?");
-        // Attempt to save from the start room to the given filename
-        if (MapIO.saveMap(startRoom, file)) {
+        if (file == null) {
+            display("Unable to save");
+            return;
+        }
+        boolean saved;
+        if (journal != null && journal.getFilename().equals(file)) {
+            saved = journal.save();
+        } else if (!journaling) {
+            // Attempt to save from the start room to the given filename
+            saved = MapIO.saveMap(startRoom, file);
+        } else {
+            MapJournal next = MapJournal.create(startRoom, player, file);
+            saved = next != null;
+            if (saved) {
+                if (journal != null) {
+                    journal.close();
+                }
+                journal = next;
+            }
+        }
+        if (saved) {
             display("Saved");
         } else {
             display("Unable to save");
@@ -350,16 +378,24 @@ public class CrawlGui extends Application {
      */
     @Override
     public void start(Stage primaryStage) {
-        List<String> parameters = getParameters().getRaw();
+        List<String> parameters = new ArrayList<>(getParameters().getRaw());
+        journaling = parameters.remove("--journal");
 
         // Ensure a map filename has been provided
         if (parameters.size() != 1) {
-            System.err.println("Usage: java CrawlGui mapname");
+            System.err.println("Usage: java CrawlGui [--journal] mapname");
             System.exit(1);
         }
 
-        // Attempt to load the given filename
-        Object[] data = MapIO.loadMap(parameters.get(0));
+        // Attempt to load the given filename, along with the changes saved
+        // to its journal if it has one
+        Object[] data;
+        journal = MapJournal.open(parameters.get(0));
+        if (journal != null) {
+            data = new Object[]{journal.getPlayer(), journal.getStartRoom()};
+        } else {
+            data = MapIO.loadMap(parameters.get(0));
+        }
 
         // Ensure the map can be successfully loaded
         if (data == null) {
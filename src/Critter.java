@@ -1,3 +1,5 @@
+import java.io.IOException;
+
 /**
  * A non-player Lootable Mob.
  *
@@ -40,6 +42,7 @@ public class Critter extends Thing implements Lootable, Mob {
     @Override
     public void takeDamage(int amount) {
         health -= amount;
+        healthChanged();
     }
 
     /**
@@ -105,6 +108,16 @@ public class Critter extends Thing implements Lootable, Mob {
     @Override
     public void setAlive(boolean alive) {
         health = (alive ? MAX_HEALTH : 0);
+        healthChanged();
+    }
+
+    /*
+     * Tell listeners that health has changed
+     */
+    private void healthChanged() {
+        for (MapListener listener : getListeners()) {
+            listener.healthChanged(this);
+        }
     }
 
     /**
@@ -124,27 +137,38 @@ public class Critter extends Thing implements Lootable, Mob {
     */
     @Override
     public String repr() {
-        return "C;" + String.format("%.5f", value) + ';' + health+';' 
+        return "C;" + FixedDecimal.fixed5(value) + ';' + health+';' 
                 + getShort() + ';' + getLong();
-    }    
+    }
+
+    @Override
+    public void writeRepr(Appendable out) throws IOException {
+        out.append("C;");
+        FixedDecimal.appendFixed5(out, value);
+        out.append(';');
+        FixedDecimal.appendInt(out, health);
+        out.append(';').append(getShort()).append(';').append(getLong());
+    }
     
     /** Factory to create Critter from a String
     * @param encoded repr() form of the object
     * @return decoded Object or null for failure. Failures include:  
                null parameters, empty input or improperly encoded input.
     */    
-    public static Critter decode(String encoded) {
+    public static Critter decode(CharSequence encoded) {
         if (encoded == null) {
             return null;
         }
-        String[] toks = encoded.split(";");
-        if (toks.length != 5) {
+        ThingFields toks = new ThingFields(encoded);
+        if (toks.count() != 5) {
             return null;
         }
         try {
-            double val = Double.parseDouble(toks[1]);
-            int health = Integer.parseInt(toks[2]);
-            return new Critter(toks[3],toks[4],val, health);
+            toks.skip();
+            double val = toks.nextDouble();
+            int health = toks.nextInt();
+            return new Critter(toks.nextString(), toks.nextString(), val,
+                    health);
         } catch (NumberFormatException nfe) {
             return null;
         }    
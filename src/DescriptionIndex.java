@@ -0,0 +1,415 @@
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Finds {@link Room Room}s and {@link Thing Thing}s by the words in their
+ * descriptions.
+ * <br />Descriptions are split into words at anything which is not a
+ * letter or digit, and words are compared ignoring case. Rooms are found
+ * by their description, Things by their short and long descriptions.
+ * Each word maps to the Rooms and Things using it, and words are kept
+ * sorted so a prefix query only looks at the words starting with it;
+ * neither kind of query looks at the map itself.
+ * <br />Like {@link MapJournal MapJournal} the index listens to every room
+ * of the map (and to the player), so it stays up to date as Things move
+ * between rooms or into the player's inventory, as descriptions change,
+ * and as new rooms are linked in. Rooms which become unreachable stay in
+ * the index. The description of a Mob includes its health (a fainted
+ * Critter says so), so the index also listens to the Mobs in it and
+ * indexes them again when their health changes. Each Thing is taken out
+ * of the index using the words it was indexed under.
+ * An index must only be used by one thread at a time.
+ */
+public class DescriptionIndex implements MapListener, Closeable {
+
+    /**
+     * Rooms and Things using one word.
+     */
+    private static final class Postings {
+        // Rooms whose description uses the word (null if none)
+        private Set<Room> rooms;
+        // Things whose descriptions use the word (null if none)
+        private Set<Thing> things;
+
+        /**
+         * @return true if nothing uses the word
+         */
+        boolean isEmpty() {
+            return rooms == null && things == null;
+        }
+
+        /**
+         * @param room Room using the word
+         */
+        void addRoom(Room room) {
+            if (rooms == null) {
+                rooms = identitySet();
+            }
+            rooms.add(room);
+        }
+
+        /**
+         * @param thing Thing using the word
+         */
+        void addThing(Thing thing) {
+            if (things == null) {
+                things = identitySet();
+            }
+            things.add(thing);
+        }
+    }
+
+    // Postings of each word, sorted by word
+    private final TreeMap<String, Postings> words = new TreeMap<>();
+    // Indexed description of each room being listened to
+    private final Map<Room, String> rooms = new IdentityHashMap<>();
+    // Where each indexed Thing is: a Room or the player
+    private final Map<Thing, Object> locations = new IdentityHashMap<>();
+    // Words each indexed Thing is indexed under
+    private final Map<Thing, String[]> thingWords = new IdentityHashMap<>();
+    // The player whose inventory is indexed (may be null)
+    private final Player player;
+    // Words of the description being indexed (reused)
+    private final List<String> scratch = new ArrayList<>();
+
+    private DescriptionIndex(Player player) {
+        this.player = player;
+    }
+
+    /**
+     * Index every Room reachable from root, the Things in them and the
+     * player's inventory, and keep the index up to date until it is
+     * closed.
+     *
+     * @param root Start room
+     * @param player The player (may be null to leave out the inventory)
+     * @return the index
+     */
+    public static DescriptionIndex build(Room root, Player player) {
+        DescriptionIndex index = new DescriptionIndex(player);
+        index.track(root);
+        if (player != null) {
+            for (Thing thing : player.getContents()) {
+                index.place(thing, player);
+            }
+            player.addListener(index);
+        }
+        return index;
+    }
+
+    /**
+     * Find the Rooms whose description uses a word.
+     *
+     * @param word Word to look for (case is ignored)
+     * @return non-modifiable view of the Rooms, which changes with the map
+     */
+    public Set<Room> roomsWithWord(String word) {
+        Postings postings = words.get(normalise(word));
+        if (postings == null || postings.rooms == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(postings.rooms);
+    }
+
+    /**
+     * Find the Rooms whose description uses a word starting with prefix.
+     *
+     * @param prefix Start of a word (case is ignored)
+     * @return the Rooms found
+     */
+    public Set<Room> roomsWithPrefix(String prefix) {
+        Set<Room> found = identitySet();
+        for (Postings postings : withPrefix(prefix)) {
+            if (postings.rooms != null) {
+                found.addAll(postings.rooms);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find the Things whose descriptions use a word.
+     *
+     * @param word Word to look for (case is ignored)
+     * @return non-modifiable view of the Things, which changes with the map
+     */
+    public Set<Thing> thingsWithWord(String word) {
+        Postings postings = words.get(normalise(word));
+        if (postings == null || postings.things == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(postings.things);
+    }
+
+    /**
+     * Find the Things whose descriptions use a word starting with prefix.
+     *
+     * @param prefix Start of a word (case is ignored)
+     * @return the Things found
+     */
+    public Set<Thing> thingsWithPrefix(String prefix) {
+        Set<Thing> found = identitySet();
+        for (Postings postings : withPrefix(prefix)) {
+            if (postings.things != null) {
+                found.addAll(postings.things);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Where is a Thing?
+     *
+     * @param thing Thing to look for
+     * @return the Room thing is in, or null if it is carried by the player
+     *         or not in the index
+     */
+    public Room roomOf(Thing thing) {
+        Object location = locations.get(thing);
+        return (location instanceof Room) ? (Room) location : null;
+    }
+
+    /**
+     * Stop keeping the index up to date. Queries still answer for the map
+     * as it was.
+     */
+    @Override
+    public void close() {
+        for (Room room : rooms.keySet()) {
+            room.removeListener(this);
+        }
+        for (Thing thing : locations.keySet()) {
+            if (thing instanceof Mob && thing != player) {
+                thing.removeListener(this);
+            }
+        }
+        if (player != null) {
+            player.removeListener(this);
+        }
+    }
+
+    @Override
+    public void thingEntered(Room room, Thing thing) {
+        place(thing, room);
+    }
+
+    @Override
+    public void thingLeft(Room room, Thing thing) {
+        if (locations.get(thing) == room) {
+            remove(thing);
+        }
+    }
+
+    @Override
+    public void inventoryAdded(Player player, Thing thing) {
+        place(thing, player);
+    }
+
+    @Override
+    public void inventoryDropped(Player player, Thing thing) {
+        if (locations.get(thing) == player) {
+            remove(thing);
+        }
+    }
+
+    @Override
+    public void exitAdded(Room room, String label, Room target) {
+        track(target);
+    }
+
+    @Override
+    public void healthChanged(Mob mob) {
+        Thing thing = (Thing) mob;
+        if (thingWords.containsKey(thing)) {
+            unindex(thing);
+            index(thing);
+        }
+    }
+
+    @Override
+    public void descriptionChanged(Room room) {
+        String old = rooms.get(room);
+        if (old == null) {
+            return;
+        }
+        for (String word : split(old)) {
+            Postings postings = words.get(word);
+            postings.rooms.remove(room);
+            if (postings.rooms.isEmpty()) {
+                postings.rooms = null;
+                drop(word, postings);
+            }
+        }
+        String description = room.getDescription();
+        rooms.put(room, description);
+        for (String word : split(description)) {
+            postings(word).addRoom(room);
+        }
+    }
+
+    /**
+     * Index a room and every room reachable from it which is not yet
+     * indexed, along with the Things in them.
+     *
+     * @param start Room to start from
+     */
+    private void track(Room start) {
+        List<Room> todo = new ArrayList<>();
+        todo.add(start);
+        while (!todo.isEmpty()) {
+            Room room = todo.remove(todo.size() - 1);
+            if (rooms.containsKey(room)) {
+                continue;
+            }
+            String description = room.getDescription();
+            rooms.put(room, description);
+            for (String word : split(description)) {
+                postings(word).addRoom(room);
+            }
+            room.forEachThing(thing -> place(thing, room));
+            room.addListener(this);
+            room.forEachExit((label, exit) -> {
+                if (!rooms.containsKey(exit)) {
+                    todo.add(exit);
+                }
+            });
+        }
+    }
+
+    /**
+     * Record where a Thing is, indexing it if it is new.
+     *
+     * @param thing Thing which has moved
+     * @param location Room or player it is now in
+     */
+    private void place(Thing thing, Object location) {
+        if (locations.put(thing, location) != null) {
+            return;
+        }
+        index(thing);
+        if (thing instanceof Mob && thing != player) {
+            thing.addListener(this);
+        }
+    }
+
+    /**
+     * Take a Thing out of the index.
+     *
+     * @param thing Thing which is no longer in the map
+     */
+    private void remove(Thing thing) {
+        locations.remove(thing);
+        unindex(thing);
+        if (thing instanceof Mob && thing != player) {
+            thing.removeListener(this);
+        }
+    }
+
+    /**
+     * Index a Thing under the words of its descriptions as they are now.
+     *
+     * @param thing Thing to index
+     */
+    private void index(Thing thing) {
+        List<String> split = split(thing.getShortDescription() + " "
+                + thing.getDescription());
+        thingWords.put(thing, split.toArray(new String[split.size()]));
+        for (String word : split) {
+            postings(word).addThing(thing);
+        }
+    }
+
+    /**
+     * Take a Thing out of the postings of the words it was indexed under.
+     *
+     * @param thing Indexed Thing
+     */
+    private void unindex(Thing thing) {
+        for (String word : thingWords.remove(thing)) {
+            Postings postings = words.get(word);
+            postings.things.remove(thing);
+            if (postings.things.isEmpty()) {
+                postings.things = null;
+                drop(word, postings);
+            }
+        }
+    }
+
+    /**
+     * @param word Normalised word
+     * @return postings of the word, created if needed
+     */
+    private Postings postings(String word) {
+        Postings postings = words.get(word);
+        if (postings == null) {
+            postings = new Postings();
+            words.put(word, postings);
+        }
+        return postings;
+    }
+
+    /**
+     * Forget a word once nothing uses it.
+     */
+    private void drop(String word, Postings postings) {
+        if (postings.isEmpty()) {
+            words.remove(word);
+        }
+    }
+
+    /**
+     * @param prefix Start of a word
+     * @return postings of every word starting with prefix
+     */
+    private Iterable<Postings> withPrefix(String prefix) {
+        String start = normalise(prefix);
+        return words.subMap(start, start + Character.MAX_VALUE).values();
+    }
+
+    /**
+     * Split text into distinct normalised words.
+     *
+     * @param text Text to split
+     * @return the words (valid until the next call)
+     */
+    private List<String> split(String text) {
+        scratch.clear();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length()
+                    && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                String word = normalise(text.substring(start, i));
+                if (!scratch.contains(word)) {
+                    scratch.add(word);
+                }
+                start = -1;
+            }
+        }
+        return scratch;
+    }
+
+    /**
+     * @param word Word as written
+     * @return the word as it is indexed
+     */
+    private static String normalise(String word) {
+        return word.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return a new empty set comparing by identity
+     */
+    private static <T> Set<T> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+    }
+}
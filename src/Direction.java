@@ -0,0 +1,96 @@
+/**
+ * The four exit labels used to lay out a map: "North", "South", "East"
+ * and "West".
+ * <br />{@link Room Room}s store exits with these labels in a fixed slot
+ * per direction, see {@link Room#getExit(Direction)}.
+ */
+public enum Direction {
+    /** "North", towards the top of the screen. */
+    NORTH("North", 0, -1),
+    /** "South", towards the bottom of the screen. */
+    SOUTH("South", 0, 1),
+    /** "East", towards the right of the screen. */
+    EAST("East", 1, 0),
+    /** "West", towards the left of the screen. */
+    WEST("West", -1, 0);
+
+    // Exit label for this direction
+    private final String label;
+    // Change in screen x coordinate when moving this way
+    private final int dx;
+    // Change in screen y coordinate when moving this way
+    private final int dy;
+
+    Direction(String label, int dx, int dy) {
+        this.label = label;
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    /**
+     * @return the exit label for this direction
+     */
+    public String label() {
+        return label;
+    }
+
+    /**
+     * @return change in screen x coordinate when moving this way
+     */
+    public int dx() {
+        return dx;
+    }
+
+    /**
+     * @return change in screen y coordinate when moving this way
+     */
+    public int dy() {
+        return dy;
+    }
+
+    /**
+     * @return the direction which leads back
+     */
+    public Direction opposite() {
+        switch (this) {
+            case NORTH:
+                return SOUTH;
+            case SOUTH:
+                return NORTH;
+            case EAST:
+                return WEST;
+            default:
+                return EAST;
+        }
+    }
+
+    /**
+     * Find the direction an exit label names. Labels are case sensitive.
+     *
+     * @param label Exit label
+     * @return the direction or null if label is not one of the four
+     */
+    public static Direction fromLabel(String label) {
+        if (label == null) {
+            return null;
+        }
+        Direction direction;
+        switch (label.length() == 0 ? ' ' : label.charAt(0)) {
+            case 'N':
+                direction = NORTH;
+                break;
+            case 'S':
+                direction = SOUTH;
+                break;
+            case 'E':
+                direction = EAST;
+                break;
+            case 'W':
+                direction = WEST;
+                break;
+            default:
+                return null;
+        }
+        return direction.label.equals(label) ? direction : null;
+    }
+}
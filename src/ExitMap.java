@@ -0,0 +1,304 @@
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Exits of a {@link Room Room}.
+ * <br />Exits labelled with a {@link Direction Direction} are kept in a
+ * fixed slot per direction, any other labels in a TreeMap which is only
+ * created when needed. Through the Map interface this is a non-modifiable
+ * map sorted by label, exactly like the TreeMap Rooms used to keep, and
+ * like TreeMap its iterators and forEach throw
+ * ConcurrentModificationException if an exit is added or removed while
+ * they are running. Only Room changes it.
+ *
+ * @serial exclude
+ */
+class ExitMap extends AbstractMap<String, Room> implements Serializable {
+
+    // Version of the serialized form
+    private static final long serialVersionUID = 1L;
+
+    // Directions in the order of their labels
+    private static final Direction[] SORTED = {
+        Direction.EAST, Direction.NORTH, Direction.SOUTH, Direction.WEST
+    };
+
+    // Exits in each Direction, indexed by ordinal
+    private final Room[] directions = new Room[SORTED.length];
+    // Number of Direction exits
+    private int directionCount;
+    // Exits with any other label (null if there are none)
+    private TreeMap<String, Room> others;
+    // Number of exits added or removed, so iterators can tell when the
+    // map changes under them
+    private transient int modCount;
+    // View of the entries (created when first needed)
+    private transient Set<Map.Entry<String, Room>> entries;
+
+    /**
+     * @param direction Direction of the exit
+     * @return the Room that way or null if there is no such exit
+     */
+    Room get(Direction direction) {
+        return directions[direction.ordinal()];
+    }
+
+    /**
+     * Add or replace an exit.
+     *
+     * @param label Name of the exit
+     * @param target Room the exit goes to
+     * @throws NullPointerException if label is null
+     */
+    void addExit(String label, Room target) {
+        Direction direction = Direction.fromLabel(label);
+        if (direction != null) {
+            if (directions[direction.ordinal()] == null) {
+                directionCount++;
+                modCount++;
+            }
+            directions[direction.ordinal()] = target;
+            return;
+        }
+        if (label == null) {
+            throw new NullPointerException();
+        }
+        if (others == null) {
+            others = new TreeMap<String, Room>();
+        }
+        if (others.put(label, target) == null) {
+            modCount++;
+        }
+    }
+
+    /**
+     * Remove an exit.
+     *
+     * @param label Name of the exit
+     * @return the Room the exit went to or null if there was no such exit
+     * @throws NullPointerException if label is null
+     */
+    Room removeExit(String label) {
+        Direction direction = Direction.fromLabel(label);
+        if (direction != null) {
+            Room target = directions[direction.ordinal()];
+            if (target != null) {
+                directions[direction.ordinal()] = null;
+                directionCount--;
+                modCount++;
+            }
+            return target;
+        }
+        if (label == null) {
+            throw new NullPointerException();
+        }
+        if (others == null) {
+            return null;
+        }
+        Room target = others.remove(label);
+        if (target != null) {
+            modCount++;
+        }
+        if (others.isEmpty()) {
+            others = null;
+        }
+        return target;
+    }
+
+    /**
+     * Remove every exit.
+     */
+    void clearExits() {
+        for (int i = 0; i < directions.length; i++) {
+            directions[i] = null;
+        }
+        directionCount = 0;
+        others = null;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return directionCount + ((others == null) ? 0 : others.size());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Room get(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        if (!(key instanceof String)) {
+            return null;
+        }
+        Direction direction = Direction.fromLabel((String) key);
+        if (direction != null) {
+            return directions[direction.ordinal()];
+        }
+        return (others == null) ? null : others.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Room put(String key, Room value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Room remove(Object key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends Room> map) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Same order as iterating over the entries, but without creating an
+     * iterator or entries when every exit is a Direction.
+     */
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Room> action) {
+        int expected = modCount;
+        if (others == null) {
+            for (Direction direction : SORTED) {
+                Room target = directions[direction.ordinal()];
+                if (target != null) {
+                    action.accept(direction.label(), target);
+                    checkFor(expected);
+                }
+            }
+            return;
+        }
+        int next = 0;
+        for (Map.Entry<String, Room> other : others.entrySet()) {
+            for (; next < SORTED.length
+                    && SORTED[next].label().compareTo(other.getKey()) < 0;
+                    next++) {
+                Room target = directions[SORTED[next].ordinal()];
+                if (target != null) {
+                    action.accept(SORTED[next].label(), target);
+                    checkFor(expected);
+                }
+            }
+            action.accept(other.getKey(), other.getValue());
+            checkFor(expected);
+        }
+        for (; next < SORTED.length; next++) {
+            Room target = directions[SORTED[next].ordinal()];
+            if (target != null) {
+                action.accept(SORTED[next].label(), target);
+                checkFor(expected);
+            }
+        }
+    }
+
+    /**
+     * @param expected modCount when the caller started
+     * @throws ConcurrentModificationException if exits have been added or
+     *         removed since
+     */
+    private void checkFor(int expected) {
+        if (modCount != expected) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, Room>> entrySet() {
+        if (entries == null) {
+            entries = new AbstractSet<Map.Entry<String, Room>>() {
+                @Override
+                public Iterator<Map.Entry<String, Room>> iterator() {
+                    return new ExitIterator();
+                }
+
+                @Override
+                public int size() {
+                    return ExitMap.this.size();
+                }
+            };
+        }
+        return entries;
+    }
+
+    /**
+     * Merges the Direction exits and the other exits in label order.
+     */
+    private class ExitIterator implements Iterator<Map.Entry<String, Room>> {
+        // Position in SORTED of the next Direction to check
+        private int next;
+        // Remaining other exits
+        private final Iterator<Map.Entry<String, Room>> rest;
+        // Next other exit (null once they are all used)
+        private Map.Entry<String, Room> pending;
+        // modCount when the iterator was made
+        private final int expected = modCount;
+
+        ExitIterator() {
+            rest = (others == null)
+                    ? Collections.<Map.Entry<String, Room>>emptyIterator()
+                    : others.entrySet().iterator();
+            pending = rest.hasNext() ? rest.next() : null;
+            skipEmpty();
+        }
+
+        /**
+         * Move next to the next Direction with an exit.
+         */
+        private void skipEmpty() {
+            while (next < SORTED.length
+                    && directions[SORTED[next].ordinal()] == null) {
+                next++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < SORTED.length || pending != null;
+        }
+
+        @Override
+        public Map.Entry<String, Room> next() {
+            checkFor(expected);
+            if (next < SORTED.length && (pending == null
+                    || SORTED[next].label().compareTo(pending.getKey()) < 0)) {
+                Direction direction = SORTED[next++];
+                skipEmpty();
+                return new AbstractMap.SimpleImmutableEntry<String, Room>(
+                        direction.label(), directions[direction.ordinal()]);
+            }
+            if (pending == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, Room> entry =
+                    new AbstractMap.SimpleImmutableEntry<String, Room>(
+                            pending);
+            pending = rest.hasNext() ? rest.next() : null;
+            return entry;
+        }
+    }
+}
@@ -1,3 +1,5 @@
+import java.io.IOException;
+
 /**
  * A Player who doesn't modify the map.
  *
@@ -46,6 +48,14 @@ public class Explorer extends Player {
         return "E;" + getHealth() + ';' + getShort() + ';' + getLong(); 
     }
 
+    @Override
+    public void writeRepr(Appendable out) throws IOException {
+            // does not save inventory
+        out.append("E;");
+        FixedDecimal.appendInt(out, getHealth());
+        out.append(';').append(getShort()).append(';').append(getLong());
+    }
+
     @Override
     public String getDescription() {
         return getLong() + (isAlive()
@@ -66,17 +76,18 @@ public class Explorer extends Player {
     * @return decoded Object or null for failure. Failures include:  
                null parameters, empty input or improperly encoded input. 
     */    
-    public static Explorer decode(String encoded) {
+    public static Explorer decode(CharSequence encoded) {
         if (encoded == null) {
             return null;
         }
-        String[] toks=encoded.split(";");
-        if (toks.length != 4) {
+        ThingFields toks = new ThingFields(encoded);
+        if (toks.count() != 4) {
             return null;
         }
         try {
-            int health = Integer.parseInt(toks[1]);
-            return new Explorer(toks[2],toks[3],health);
+            toks.skip();
+            int health = toks.nextInt();
+            return new Explorer(toks.nextString(), toks.nextString(), health);
         } catch (NumberFormatException nfe) {
             return null;
         }    
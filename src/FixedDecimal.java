@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Formats numbers for {@link Thing#writeRepr(Appendable) writeRepr} without
+ * going through {@link java.util.Formatter Formatter}.
+ * <br />{@link #appendFixed5(Appendable, double) appendFixed5} gives exactly
+ * the same text as <code>String.format("%.5f", value)</code> in the default
+ * format locale. Values which are within rounding error of a number with
+ * five decimals (which includes every value read back from a saved map)
+ * are written from a long; anything else is given to String.format.
+ */
+final class FixedDecimal {
+
+    // 10 to the power of the number of decimals
+    private static final double SCALE = 1e5;
+    // Number of decimals written
+    private static final int DECIMALS = 5;
+    // Largest scaled value handled directly. Below this the gap between
+    // adjacent doubles is much smaller than the last decimal, so the
+    // value has a single five decimal form.
+    private static final double MAX_SCALED = 1e15;
+
+    // Symbols of the locale used most recently (replaced, never modified)
+    private static volatile Symbols symbols = new Symbols(Locale.ROOT);
+
+    /**
+     * Digits and decimal separator of a locale.
+     */
+    private static final class Symbols {
+        // Locale these symbols belong to
+        private final Locale locale;
+        // Character used for zero (the others follow it)
+        private final char zero;
+        // Character between the whole number and the decimals
+        private final char separator;
+
+        Symbols(Locale locale) {
+            DecimalFormatSymbols formats =
+                    DecimalFormatSymbols.getInstance(locale);
+            this.locale = locale;
+            zero = formats.getZeroDigit();
+            separator = formats.getDecimalSeparator();
+        }
+    }
+
+    private FixedDecimal() {
+    }
+
+    /**
+     * @param value Number to format
+     * @return same as <code>String.format("%.5f", value)</code>
+     */
+    static String fixed5(double value) {
+        StringBuilder out = new StringBuilder(24);
+        try {
+            appendFixed5(out, value);
+        } catch (IOException ex) {
+            // a StringBuilder can not fail
+            throw new IllegalStateException(ex);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Write a number with five decimals.
+     *
+     * @param out Destination
+     * @param value Number to format
+     * @throws IOException if out fails
+     */
+    static void appendFixed5(Appendable out, double value)
+            throws IOException {
+        double scaled = Math.rint(value * SCALE);
+        if (!(Math.abs(scaled) < MAX_SCALED) || scaled / SCALE != value
+                || (value == 0 && 1 / value < 0)) {
+            // far from five decimals, too large, NaN or negative zero
+            out.append(String.format("%.5f", value));
+            return;
+        }
+        Symbols digits = symbols();
+        long fixed = (long) scaled;
+        if (fixed < 0) {
+            out.append('-');
+            fixed = -fixed;
+        }
+        long whole = fixed / (long) SCALE;
+        appendDigits(out, whole, 1, digits.zero);
+        out.append(digits.separator);
+        appendDigits(out, fixed - whole * (long) SCALE, DECIMALS,
+                digits.zero);
+    }
+
+    /**
+     * Write an int in the same form as {@link Integer#toString(int)}.
+     *
+     * @param out Destination
+     * @param value Number to write
+     * @throws IOException if out fails
+     */
+    static void appendInt(Appendable out, int value) throws IOException {
+        long digits = value;
+        if (digits < 0) {
+            out.append('-');
+            digits = -digits;
+        }
+        appendDigits(out, digits, 1, '0');
+    }
+
+    /**
+     * Write the digits of a non-negative number.
+     *
+     * @param out Destination
+     * @param value Number to write
+     * @param width Minimum number of digits (padded with zeros)
+     * @param zero Character for the digit zero
+     * @throws IOException if out fails
+     */
+    private static void appendDigits(Appendable out, long value, int width,
+            char zero) throws IOException {
+        long power = 1;
+        int length = 1;
+        while (power <= value / 10) {
+            power *= 10;
+            length++;
+        }
+        for (; length < width; width--) {
+            out.append(zero);
+        }
+        for (; power > 0; power /= 10) {
+            out.append((char) (zero + value / power));
+            value %= power;
+        }
+    }
+
+    /**
+     * @return symbols of the locale String.format would use
+     */
+    private static Symbols symbols() {
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        Symbols current = symbols;
+        if (!current.locale.equals(locale)) {
+            current = new Symbols(locale);
+            symbols = current;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.Arrays;
+
+/**
+ * The living Mobs in a {@link Room Room}, kept so that
+ * {@link Room#leave(Thing) leave} only has to ask them whether they want
+ * to fight.
+ * <br />Mobs are held in an array in no particular order; removing one
+ * moves the last Mob into its place. Only Room uses this, and it records
+ * each Mob's position in its {@link ContentsList ContentsList} node so
+ * that finding a Mob here never needs a search.
+ */
+final class LivingMobs {
+
+    // Initial capacity
+    private static final int INITIAL = 4;
+
+    // The Mobs (only the first size are used)
+    private Mob[] mobs = new Mob[INITIAL];
+    // Number of Mobs
+    private int size;
+
+    /**
+     * @return number of Mobs
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param position Index of a Mob, less than size()
+     * @return the Mob at position
+     */
+    Mob get(int position) {
+        return mobs[position];
+    }
+
+    /**
+     * Add a Mob. Does not check whether it is already here.
+     *
+     * @param mob Mob to add
+     * @return position of mob
+     */
+    int add(Mob mob) {
+        if (size == mobs.length) {
+            mobs = Arrays.copyOf(mobs, size * 2);
+        }
+        mobs[size] = mob;
+        return size++;
+    }
+
+    /**
+     * Remove the Mob at an index, moving the last Mob into its place.
+     *
+     * @param position Index of the Mob, less than size()
+     * @return the Mob now at position, or null if the last Mob was removed
+     */
+    Mob removeAt(int position) {
+        Mob moved = (position < size - 1) ? mobs[size - 1] : null;
+        mobs[position] = mobs[--size];
+        mobs[size] = null;
+        if (size >= INITIAL && size < mobs.length / 4) {
+            mobs = Arrays.copyOf(mobs, mobs.length / 2);
+        }
+        return moved;
+    }
+}
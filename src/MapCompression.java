@@ -0,0 +1,162 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression applied to a saved map file.
+ * <br />Loaders recognise compressed files from their first two bytes, so
+ * a compressed map can be read by the same calls as a plain one.
+ *
+ * @see MapIO#saveMap(Room, String, MapCompression)
+ * @see MapIO#serializeMap(Room, String, MapCompression)
+ */
+public enum MapCompression {
+    /** Plain file. */
+    NONE,
+    /** gzip at the default level (readable with the gzip tools). */
+    GZIP,
+    /** zlib at the fastest level: quickest to write, larger files. */
+    FAST;
+
+    // Buffer size used for file streams
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // First two bytes of a gzip file
+    private static final int GZIP_MAGIC = 0x1f8b;
+    // First byte of a zlib stream (deflate with a 32K window)
+    private static final int ZLIB_MAGIC = 0x78;
+    // Most bytes deflate can expand one compressed byte into
+    private static final long MAX_EXPANSION = 1032;
+
+    /**
+     * Wrap a stream so everything written to it is compressed.
+     * Closing the result closes out.
+     *
+     * @param out Stream to write compressed bytes to
+     * @return buffered stream to write uncompressed bytes to
+     * @throws IOException if out fails
+     */
+    OutputStream wrap(OutputStream out) throws IOException {
+        switch (this) {
+            case GZIP:
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+                break;
+            case FAST:
+                out = new DeflaterOutputStream(out,
+                        new Deflater(Deflater.BEST_SPEED), BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            def.end();
+                        }
+                    }
+                };
+                break;
+            default:
+                break;
+        }
+        return new BufferedOutputStream(out, BUFFER_SIZE);
+    }
+
+    /**
+     * Open a file, decompressing it if needed.
+     *
+     * @param filename File to read
+     * @return buffered stream of the uncompressed bytes
+     * @throws IOException if the file can not be opened or read
+     */
+    static InputStream open(String filename) throws IOException {
+        InputStream in = new BufferedInputStream(
+                new FileInputStream(filename), BUFFER_SIZE);
+        try {
+            in.mark(2);
+            int first = in.read();
+            int second = in.read();
+            in.reset();
+            switch (detect(first, second)) {
+                case GZIP:
+                    return new BufferedInputStream(
+                            new GZIPInputStream(in, BUFFER_SIZE),
+                            BUFFER_SIZE);
+                case FAST:
+                    return new BufferedInputStream(new InflaterInputStream(
+                            in, new Inflater(), BUFFER_SIZE) {
+                        @Override
+                        public void close() throws IOException {
+                            try {
+                                super.close();
+                            } finally {
+                                inf.end();
+                            }
+                        }
+                    }, BUFFER_SIZE);
+                default:
+                    return in;
+            }
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Most bytes {@link #open(String) open} can give for a file: its size
+     * if it is plain, otherwise as much as deflate can expand it to.
+     * Loaders check counts against this so a corrupt file can not make
+     * them allocate more than the file could hold.
+     *
+     * @param filename File to read
+     * @return upper bound on the uncompressed size
+     * @throws IOException if the file can not be read
+     */
+    static long maxOpenedSize(String filename) throws IOException {
+        long size = Files.size(Paths.get(filename));
+        int first;
+        int second;
+        try (InputStream in = new FileInputStream(filename)) {
+            first = in.read();
+            second = in.read();
+        }
+        if (detect(first, second) == NONE) {
+            return size;
+        }
+        return size * MAX_EXPANSION;
+    }
+
+    /**
+     * Work out how a file is compressed from its first two bytes.
+     * <br />Plain maps start with a digit, serialized maps with 0xACED and
+     * binary maps with 'C', none of which can start a gzip or zlib stream
+     * (0x78, the only zlib header byte Deflater writes).
+     *
+     * @param first First byte of the file (or -1)
+     * @param second Second byte of the file (or -1)
+     * @return compression used by the file
+     */
+    static MapCompression detect(int first, int second) {
+        if (first < 0 || second < 0) {
+            return NONE;
+        }
+        int header = (first << 8) | second;
+        if (header == GZIP_MAGIC) {
+            return GZIP;
+        }
+        // zlib headers are also a multiple of 31
+        if (first == ZLIB_MAGIC && header % 31 == 0) {
+            return FAST;
+        }
+        return NONE;
+    }
+}
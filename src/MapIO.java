@@ -1,5 +1,11 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /** Static routines to save and load {@link Room Room}s
 * @author JF
@@ -7,13 +13,30 @@ import java.util.*;
 public class MapIO
 {
     /** Write rooms to a new file (using Java serialisation)
+    * Rooms serialise as a {@link SerialRoomGraph SerialRoomGraph}, 
+    *     so maps of any depth can be written.
     * @param root Start room to explore from
     * @param filename Filename to write to
     * @return true if successful
     */
     public static boolean serializeMap(Room root, String filename) {
+        return serializeMap(root, filename, MapCompression.NONE);
+    }
+
+    /** Write rooms to a new, possibly compressed, file (using Java 
+    *     serialisation)
+    * {@link #deserializeMap(String) deserializeMap} detects the 
+    *     compression itself.
+    * @param root Start room to explore from
+    * @param filename Filename to write to
+    * @param compression Compression to apply
+    * @return true if successful
+    */
+    public static boolean serializeMap(Room root, String filename,
+            MapCompression compression) {
         try {
-            FileOutputStream fs = new FileOutputStream(filename);
+            OutputStream fs = compression.wrap(
+                    new FileOutputStream(filename));
             ObjectOutputStream os = new ObjectOutputStream(fs);
             os.writeObject(root);
             os.close();
@@ -23,13 +46,13 @@ public class MapIO
         return true;
     }
 
-    /** Read serialised Rooms from a file 
+    /** Read serialised Rooms from a file (which may be compressed)
     * @param filename Filename to read Rooms from
     * @return start Room or null on failure
     */
     public static Room deserializeMap(String filename) {
         try{
-            FileInputStream ifs = new FileInputStream(filename);
+            InputStream ifs = MapCompression.open(filename);
             ObjectInputStream is = new ObjectInputStream(ifs);
             Room t = (Room)is.readObject();
             is.close();
@@ -143,73 +166,217 @@ C;1.0;5;frog;a frog<br />
         sw.walk();
         List<Room> rooms = sw.seq;
             // now we want to be able to find Rooms quickly
-        Map<Room, Integer> idm = new HashMap<Room, Integer>();
+        RoomIntTable idm = ids(rooms);
+            // now we can look up any Room's position quickly
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeMap(rooms, idm, sb, null);
+            FileWriter fw = new FileWriter(filename);
+            fw.write(sb.toString());
+            fw.close();
+        } catch (IOException ioe) {
+            return false;
+        }
+        return true;    
+    }    
+
+    /** Write Rooms to a new file in the same format as 
+    *     {@link #saveMap(Room, String) saveMap}, streaming each section 
+    *     to the file as it is produced.
+    * Unlike saveMap the file contents are never held in memory, so 
+    *     the memory needed does not grow with the size of the file.
+    * @param root Start room
+    * @param filename Filename to write to
+    * @return true if successful
+    * @require There is exactly one player object anywhere in the 
+         map(appearing exactly once).
+    */
+    public static boolean saveMapStreaming(Room root, String filename) {
+        return saveMap(root, filename, false);
+    }
+
+    /** Write Rooms to a new file in the same format as 
+    *     {@link #saveMap(Room, String) saveMap}, streaming each section 
+    *     to the file as it is produced, optionally followed by an index.
+    * The index footer records where each section and each room's lines 
+    *     start so single rooms can be read with 
+    *     {@link MapIndex MapIndex}. Loaders ignore it.
+    * @param root Start room
+    * @param filename Filename to write to
+    * @param index true to append an index footer
+    * @return true if successful
+    * @require There is exactly one player object anywhere in the 
+         map(appearing exactly once).
+    */
+    public static boolean saveMap(Room root, String filename, 
+            boolean index) {
+        SeqWalker sw=new SeqWalker(root);
+        sw.walk();
+        return writeFile(sw.seq, filename, index);
+    }
+
+    /** Write Rooms to a new, possibly compressed, file in the same 
+    *     format as {@link #saveMap(Room, String) saveMap}.
+    * {@link #loadMap(String) loadMap} and the other loaders detect the 
+    *     compression themselves. Only loadMap streams a compressed file, 
+    *     the others hand such files to it.
+    * @param root Start room
+    * @param filename Filename to write to
+    * @param compression Compression to apply
+    * @return true if successful
+    * @require There is exactly one player object anywhere in the 
+         map(appearing exactly once).
+    */
+    public static boolean saveMap(Room root, String filename, 
+            MapCompression compression) {
+        if (compression == MapCompression.NONE) {
+            return saveMapStreaming(root, filename);
+        }
+        SeqWalker sw=new SeqWalker(root);
+        sw.walk();
+        List<Room> rooms = sw.seq;
+        try {
+            Writer out = new OutputStreamWriter(compression.wrap(
+                    new FileOutputStream(filename)));
+            try {
+                writeMap(rooms, ids(rooms), out, null);
+            } finally {
+                out.close();
+            }
+        } catch (IOException ioe) {
+            return false;
+        }
+        return true;
+    }
+
+    /** Write Rooms to a new file in the given order, in the same format as 
+    *     {@link #saveMap(Room, String) saveMap}.
+    * Unlike saveMap, rooms which can not be reached from the first one are 
+    *     written too, and each room's id in the file is its position in 
+    *     the list.
+    * @param rooms Rooms to write (start room first)
+    * @param filename Filename to write to
+    * @return true if successful
+    * @require There is exactly one player object in the rooms
+    */
+    static boolean saveRooms(List<Room> rooms, String filename) {
+        return writeFile(rooms, filename, false);
+    }
+
+    /** Stream rooms to a file, optionally followed by an index
+    * @param rooms Rooms to write (start room first)
+    * @param filename Filename to write to
+    * @param index true to append an index footer
+    * @return true if successful
+    */
+    private static boolean writeFile(List<Room> rooms, String filename,
+            boolean index) {
+        RoomIntTable idm = ids(rooms);
+        try {
+            MapWriter out = new MapWriter(filename);
+            try {
+                MapIndex.Builder footer = null;
+                if (index) {
+                    footer = new MapIndex.Builder(out, rooms.size());
+                }
+                writeMap(rooms, idm, out, footer);
+                if (footer != null) {
+                    footer.writeFooter();
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException ioe) {
+            return false;
+        }
+        return true;
+    }
+
+    /** Number rooms by their position in a list
+    * @param rooms Rooms to number
+    * @return id of each room (-1 for rooms not in the list)
+    */
+    static RoomIntTable ids(List<Room> rooms) {
+        RoomIntTable idm = new RoomIntTable(-1);
         int count = 0;
         for (Room r : rooms) {
             idm.put(r, count++);
         }
-            // now we can look up any Room's position quickly
-        StringBuilder sb = new StringBuilder();
+        return idm;
+    }
+
+    /** Write the sections of a saved map
+    * @param rooms Rooms to write (start room first)
+    * @param idm Position of each room in rooms
+    * @param out Destination for the encoded map
+    * @param index Records where each room's lines start (may be null)
+    * @throws IOException if out fails
+    */
+    private static void writeMap(List<Room> rooms, RoomIntTable idm,
+            Appendable out, MapIndex.Builder index) throws IOException {
             // write the ID cap to the file 
-        sb.append(idm.size());
-        sb.append('\n');       
+        out.append(Integer.toString(rooms.size()));
+        out.append('\n');       
             // output all of the rooms in sequence
+        int id = 0;
         for (Room r : rooms) {
-            sb.append(r.getDescription());
-            sb.append('\n');
+            if (index != null) {
+                index.description(id++);
+            }
+            out.append(r.getDescription());
+            out.append('\n');
         }
 
           //     then link them up
+        id = 0;
         for (Room r : rooms) {
+            if (index != null) {
+                index.exits(id++);
+            }
             Map<String, Room> m = r.getExits();
-            sb.append(m.size());
-            sb.append('\n');             
+            out.append(Integer.toString(m.size()));
+            out.append('\n');             
             for (Map.Entry<String, Room> entry : m.entrySet()) {
-                sb.append(idm.get(entry.getValue()));
-                sb.append(" ");
-                sb.append(entry.getKey());
-                sb.append('\n');        
+                out.append(Integer.toString(idm.get(entry.getValue())));
+                out.append(" ");
+                out.append(entry.getKey());
+                out.append('\n');        
             }
         }
           //     then fill in the objects
+        id = 0;
         for (Room r : rooms) {
+            if (index != null) {
+                index.contents(id++);
+            }
             List<Thing> l = r.getContents();
-            int size = l.size();
-            sb.append(l.size());
-            sb.append('\n');
+            out.append(Integer.toString(l.size()));
+            out.append('\n');
             for (Thing t : l) {
-                sb.append(t.repr());
-                sb.append('\n');
+                if (index != null && t instanceof Player) {
+                    index.player();
+                }
+                t.writeRepr(out);
+                out.append('\n');
             }
         }
-        try {
-            FileWriter fw = new FileWriter(filename);
-            fw.write(sb.toString());
-            fw.close();
-        } catch (IOException ioe) {
-            return false;
-        }
-        return true;    
-    }    
+    }
     
     /** Decode a String into a Thing. (Need to be able to decode, 
     *     Treasure, Critter, Explorer)
+    * The codec registered with {@link ThingCodecs ThingCodecs} for the 
+    *     first character is used, so new kinds of Thing can be added 
+    *     without changing this method.
     * @param encoded String to decode
     * @param root start room for the map
-    * @return Decoded Thing or null on failure. (null arguments or 
+    * @return Decoded Thing or null on failure. (null arguments, empty or
               incorrectly encoded input)
     */
     public static Thing decodeThing(String encoded, Room root) {
         if ((encoded == null) || (root == null)) {
             return null;
         }
-        switch (encoded.charAt(0)) {
-        case '$': return Treasure.decode(encoded);
-        case 'C': return Critter.decode(encoded);
-        case 'E': return Explorer.decode(encoded);
-        }
-    
-        return null;
+        return ThingCodecs.decode(encoded);
     }
     
     /** Read information from a file created with saveMap
@@ -221,11 +388,21 @@ C;1.0;5;frog;a frog<br />
            will be responsible for placing the player in the start room.
     */
     public static Object[] loadMap(String filename) {
+        return loadMap(filename, null);
+    }
+
+    /** Read a map, noting which room the player was in
+    * @param filename Filename to read from
+    * @param playerRoom If not null, element 0 is set to the room the 
+    *     player was listed in (null if there is no player)
+    * @return same as {@link #loadMap(String) loadMap}
+    */
+    static Object[] loadMap(String filename, Room[] playerRoom) {
         Player player = null;
 
         try {
             BufferedReader bf = new BufferedReader(
-                    new FileReader(filename));
+                    new InputStreamReader(MapCompression.open(filename)));
             String line = bf.readLine();
             int idcap = Integer.parseInt(line);
             Room[] rooms = new Room[idcap];
@@ -250,11 +427,7 @@ C;1.0;5;frog;a frog<br />
                     }
                     int target = Integer.parseInt(line.substring(0,pos));
                     String exname = line.substring(pos+1);
-                    try {
-                        rooms[i].addExit(exname, rooms[target]);
-                    } catch (ExitExistsException e) {
-                        return null;
-                    } catch (NullRoomException e) {
+                    if (!rooms[i].loadExit(exname, rooms[target])) {
                         return null;
                     }
                 }
@@ -273,8 +446,11 @@ C;1.0;5;frog;a frog<br />
                     }
                     if (t instanceof Player) { // we don't add 
                         player = (Player)t;      // players to rooms
+                        if (playerRoom != null) {
+                            playerRoom[0] = rooms[i];
+                        }
                     } else {
-                        rooms[i].enter(t);
+                        rooms[i].loadThing(t);
                     }
                 }
             }
@@ -291,6 +467,268 @@ C;1.0;5;frog;a frog<br />
         }
     }
     
+    /** Read information from a file created with saveMap by memory mapping
+    *     it rather than reading it line by line.
+    * Counts, exit targets and exit labels are parsed directly from the
+    *     mapped bytes, so only descriptions, labels and items which are
+    *     kept allocate. Files too large to map in one piece and 
+    *     compressed files are handed to {@link #loadMap(String) loadMap}.
+    * @param filename Filename to read from
+    * @return same as {@link #loadMap(String) loadMap}
+    */
+    public static Object[] loadMapMapped(String filename) {
+        return loadMapMapped(filename, null);
+    }
+
+    /** Read a map by memory mapping it, noting which room the player 
+    *     was in
+    * @param filename Filename to read from
+    * @param playerRoom If not null, element 0 is set to the room the 
+    *     player was listed in (null if there is no player)
+    * @return same as {@link #loadMap(String) loadMap}
+    */
+    static Object[] loadMapMapped(String filename, Room[] playerRoom) {
+        ByteBuffer buffer;
+        try {
+            buffer = mapFile(filename);
+        } catch (IOException ex) {
+            return null;
+        }
+        if (buffer == null) {
+            return loadMap(filename, playerRoom);
+        }
+        try {
+            return readMap(new MapScanner(buffer, Charset.defaultCharset(),
+                    0), playerRoom);
+        } catch (IndexOutOfBoundsException ex) {
+            return null;
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
+
+    /** Read information from a file created with saveMap using all 
+    *     available cores.
+    * Room exits and contents are decoded in parallel once the position 
+    *     of every room's lines is known. 
+    *     See {@link ParallelMapLoader ParallelMapLoader}. Compressed 
+    *     files are read with {@link #loadMap(String) loadMap}.
+    * @param filename Filename to read from
+    * @return same as {@link #loadMap(String) loadMap}
+    */
+    public static Object[] loadMapParallel(String filename) {
+        return loadMapParallel(filename, ForkJoinPool.commonPool());
+    }
+
+    /** Read information from a file created with saveMap using a 
+    *     fixed number of threads.
+    * @param filename Filename to read from
+    * @param parallelism Number of threads to use
+    * @return same as {@link #loadMap(String) loadMap}
+    */
+    public static Object[] loadMapParallel(String filename, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return loadMapParallel(filename, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Read a map in parallel using the tasks of a given pool
+    * @param filename Filename to read from
+    * @param pool Pool to run the tasks in
+    * @return same as {@link #loadMap(String) loadMap}
+    */
+    private static Object[] loadMapParallel(String filename, 
+            ForkJoinPool pool) {
+        ByteBuffer buffer;
+        try {
+            buffer = mapFile(filename);
+        } catch (IOException ex) {
+            return null;
+        }
+        if (buffer == null) {
+            return loadMap(filename);
+        }
+        return new ParallelMapLoader(buffer, Charset.defaultCharset())
+                .load(pool);
+    }
+
+    /** Open a file created with saveMap without reading the whole map.
+    * Rooms are read as they are used, see {@link PagedMap PagedMap}.
+    *     If the file has an index footer it replaces the initial scan.
+    *     Files too large to map in one piece and compressed files are 
+    *     read with {@link #loadMap(String) loadMap}.
+    * @param filename Filename to read from
+    * @param radius How many exits away from a used room to prefetch
+    * @param maxLoaded Maximum number of unchanged rooms to keep in memory
+    * @return same as {@link #loadMap(String) loadMap}
+    */
+    public static Object[] loadMapLazy(String filename, int radius,
+            int maxLoaded) {
+        ByteBuffer buffer;
+        try {
+            buffer = mapFile(filename);
+        } catch (IOException ex) {
+            return null;
+        }
+        if (buffer == null) {
+            return loadMap(filename);
+        }
+        try {
+            Charset charset = Charset.defaultCharset();
+            MapLayout layout = MapIndex.layoutOf(buffer);
+            if (layout == null) {
+                layout = MapLayout.scan(buffer, charset);
+            }
+            if (layout == null) {
+                return null;
+            }
+            PagedMap map = new PagedMap(buffer, charset, layout, radius,
+                    maxLoaded);
+            Object[] res = new Object[2];
+            res[0] = map.readPlayer();
+            res[1] = map.getStartRoom();
+            return res;
+        } catch (IndexOutOfBoundsException ex) {
+            return null;
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
+
+    /** Map a whole file into memory
+    * @param filename File to map
+    * @return read only buffer holding the file or null if the file is 
+    *     too large to map in one piece or is compressed
+    * @throws IOException if the file can not be mapped
+    */
+    private static ByteBuffer mapFile(String filename) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 
+                    0, channel.size());
+            if (buffer.limit() >= 2 && MapCompression.detect(
+                    buffer.get(0) & 0xff, buffer.get(1) & 0xff) 
+                    != MapCompression.NONE) {
+                return null;
+            }
+            return buffer;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /** Read a map from a scanner positioned at the start of the file
+    * @param in Scanner to read from
+    * @param playerRoom Set to the room the player was listed in 
+    *     (may be null)
+    * @return same as {@link #loadMap(String) loadMap}
+    * @throws IndexOutOfBoundsException if the input ends early
+    * @throws NumberFormatException if a count or room id is malformed
+    */
+    private static Object[] readMap(MapScanner in, Room[] playerRoom) {
+        Player[] player = new Player[1];
+        Room[] rooms = readRooms(in, player, playerRoom);
+        if (rooms == null) {
+            return null;
+        }
+        Object[] res = new Object[2];
+        res[0] = player[0];
+        res[1] = rooms[0];
+        return res;
+    }
+
+    /** Read every room from a file created with saveMap.
+    * Unlike {@link #loadMap(String) loadMap} all rooms are returned, 
+    *     in the order they appear in the file.
+    * @param filename Filename to read from
+    * @param player Set to the player found in the file (or null)
+    * @return the rooms or null on failure (including files too large 
+    *     to map in one piece and compressed files)
+    */
+    static Room[] loadRooms(String filename, Player[] player) {
+        try {
+            ByteBuffer buffer = mapFile(filename);
+            if (buffer == null) {
+                return null;
+            }
+            Room[] rooms = readRooms(new MapScanner(buffer, 
+                    Charset.defaultCharset(), 0), player, null);
+            return (rooms == null || rooms.length == 0) ? null : rooms;
+        } catch (IOException ex) {
+            return null;
+        } catch (IndexOutOfBoundsException ex) {
+            return null;
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
+
+    /** Read the rooms of a map from a scanner positioned at the start 
+    *     of the file
+    * @param in Scanner to read from
+    * @param player Set to the player found in the file (or null)
+    * @param playerRoom Set to the room the player was listed in 
+    *     (may be null)
+    * @return the rooms in file order or null on failure
+    * @throws IndexOutOfBoundsException if the input ends early
+    * @throws NumberFormatException if a count or id is not a number
+    */
+    private static Room[] readRooms(MapScanner in, Player[] player,
+            Room[] playerRoom) {
+        player[0] = null;
+        int idcap = in.readIntLine();
+        if (idcap < 0) {
+            return null;
+        }
+        Room[] rooms = new Room[idcap];
+        for (int i = 0; i < idcap; ++i) {
+            String line = in.readLine();
+            if (line == null) {
+                return null;
+            }
+            rooms[i] = new Room(line);
+        }
+        String[] label = new String[1];
+        for (int i = 0; i < idcap; ++i) {  // for each room set up exits
+            int exitcount = in.readIntLine();
+            for (int j = 0; j < exitcount; ++j) {
+                int target = in.readExit(label);
+                if (!rooms[i].loadExit(label[0], rooms[target])) {
+                    return null;
+                }
+            }
+        }
+        for (int i = 0; i < idcap; ++i) {
+            int itemcount = in.readIntLine();
+            for (int j = 0; j < itemcount; ++j) {
+                String line = in.readLine();
+                if (line == null) {
+                    return null;
+                }
+                Thing t = decodeThing(line, rooms[0]);
+                if (t == null) {
+                    return null;
+                }
+                if (t instanceof Player) { // players are not added to rooms
+                    player[0] = (Player)t;
+                    if (playerRoom != null) {
+                        playerRoom[0] = rooms[i];
+                    }
+                } else {
+                    rooms[i].loadThing(t);
+                }
+            }
+        }
+        return rooms;
+    }
+
     /** 
     * Used to find a sequence of reachable rooms
     * @author JF
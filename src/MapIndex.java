@@ -0,0 +1,505 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Random access to single rooms of a map file which was saved with an index
+ * footer (see {@link MapIO#saveMap(Room, String, boolean)}).
+ * <br />The footer follows the contents section, so loaders which do not
+ * know about it still read the file. Its layout (all numbers big-endian) is:
+ * <ol><li>"CRWI", a version byte and the number of rooms (int)</li>
+ *     <li>Byte offsets of the description, exit and content sections and
+ *         of the end of the content section (longs)</li>
+ *     <li>Byte offset of the player's line, or -1 (long)</li>
+ *     <li>For each room: offsets of its description line, exit count line
+ *         and item count line (longs)</li>
+ *     <li>Byte offset of the footer (long) and the magic bytes "CRWLIDX1"</li>
+ * </ol>
+ * Only the footer trailer and the requested room's lines are read, so
+ * single rooms can be inspected in files of any size.
+ */
+public class MapIndex implements Closeable {
+
+    // Magic bytes at the start of the footer
+    private static final byte[] FOOTER_MAGIC = {'C', 'R', 'W', 'I'};
+    // Magic bytes at the very end of an indexed file
+    private static final byte[] TRAILER_MAGIC = {
+            'C', 'R', 'W', 'L', 'I', 'D', 'X', '1'
+    };
+    // Current footer version
+    private static final int VERSION = 1;
+    // Bytes in the footer before the per-room table
+    private static final int HEADER_SIZE = 4 + 1 + 4 + 5 * 8;
+    // Bytes in each per-room entry
+    private static final int ENTRY_SIZE = 3 * 8;
+    // Bytes in the trailer
+    private static final int TRAILER_SIZE = 8 + 8;
+
+    // Sections of the file
+    private static final int DESCRIPTIONS = 0;
+    private static final int EXITS = 1;
+    private static final int CONTENTS = 2;
+
+    // The indexed file
+    private final FileChannel channel;
+    // Charset the text of the file was written in
+    private final Charset charset;
+    // Where the per-room table starts
+    private final long table;
+    // Number of rooms in the file
+    private final int roomCount;
+    // Section offsets (descriptions, exits, contents, end)
+    private final long[] sections = new long[4];
+    // Offset of the player line (or -1)
+    private final long player;
+
+    /**
+     * Read the footer of an open file.
+     *
+     * @param channel File to read
+     * @param charset Charset the file was written in
+     * @throws IOException if the file has no valid index footer
+     */
+    private MapIndex(FileChannel channel, Charset charset)
+            throws IOException {
+        this.channel = channel;
+        this.charset = charset;
+        long size = channel.size();
+        if (size < TRAILER_SIZE) {
+            throw new IOException("no index footer");
+        }
+        ByteBuffer trailer = read(size - TRAILER_SIZE, TRAILER_SIZE);
+        long footer = trailer.getLong();
+        for (byte expected : TRAILER_MAGIC) {
+            if (trailer.get() != expected) {
+                throw new IOException("no index footer");
+            }
+        }
+        if (footer < 0 || footer > size - TRAILER_SIZE - HEADER_SIZE) {
+            throw new IOException("bad index footer");
+        }
+        ByteBuffer header = read(footer, HEADER_SIZE);
+        for (byte expected : FOOTER_MAGIC) {
+            if (header.get() != expected) {
+                throw new IOException("bad index footer");
+            }
+        }
+        if (header.get() != VERSION) {
+            throw new IOException("unknown index version");
+        }
+        roomCount = header.getInt();
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = header.getLong();
+        }
+        player = header.getLong();
+        table = footer + HEADER_SIZE;
+        if (roomCount < 0 || table + (long) roomCount * ENTRY_SIZE
+                != size - TRAILER_SIZE) {
+            throw new IOException("bad index footer");
+        }
+    }
+
+    /**
+     * Open the index of a map file.
+     *
+     * @param filename Map file saved with an index footer
+     * @return index of the file
+     * @throws IOException if the file can not be read or has no index
+     */
+    public static MapIndex open(String filename) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ);
+        try {
+            return new MapIndex(channel, Charset.defaultCharset());
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return number of rooms in the file
+     */
+    public int getRoomCount() {
+        return roomCount;
+    }
+
+    /**
+     * @return byte offset of the description section
+     */
+    public long getDescriptionsOffset() {
+        return sections[DESCRIPTIONS];
+    }
+
+    /**
+     * @return byte offset of the exit section
+     */
+    public long getExitsOffset() {
+        return sections[EXITS];
+    }
+
+    /**
+     * @return byte offset of the content section
+     */
+    public long getContentsOffset() {
+        return sections[CONTENTS];
+    }
+
+    /**
+     * @return byte offset just past the content section (where the footer
+     *         starts)
+     */
+    public long getEndOffset() {
+        return sections[3];
+    }
+
+    /**
+     * Where does one of a room's lines start?
+     *
+     * @param id Room id (0 is the start room)
+     * @param section One of DESCRIPTIONS, EXITS or CONTENTS
+     * @return byte offset of the line
+     * @throws IOException if the file can not be read
+     */
+    private long offset(int id, int section) throws IOException {
+        if (id < 0 || id >= roomCount) {
+            throw new IndexOutOfBoundsException("no room " + id);
+        }
+        return read(table + (long) id * ENTRY_SIZE + section * 8, 8)
+                .getLong();
+    }
+
+    /**
+     * @param id Room id (0 is the start room)
+     * @return byte offset of the room's description line
+     * @throws IOException if the file can not be read
+     */
+    public long getDescriptionOffset(int id) throws IOException {
+        return offset(id, DESCRIPTIONS);
+    }
+
+    /**
+     * @param id Room id (0 is the start room)
+     * @return byte offset of the room's exit count line
+     * @throws IOException if the file can not be read
+     */
+    public long getExitsOffset(int id) throws IOException {
+        return offset(id, EXITS);
+    }
+
+    /**
+     * @param id Room id (0 is the start room)
+     * @return byte offset of the room's item count line
+     * @throws IOException if the file can not be read
+     */
+    public long getContentsOffset(int id) throws IOException {
+        return offset(id, CONTENTS);
+    }
+
+    /**
+     * @return byte offset of the line holding the player, or -1 if the map
+     *         does not contain one
+     */
+    public long getPlayerOffset() {
+        return player;
+    }
+
+    /**
+     * Read one room's description.
+     *
+     * @param id Room id (0 is the start room)
+     * @return description of the room
+     * @throws IOException if the file can not be read
+     */
+    public String getDescription(int id) throws IOException {
+        return new LineReader(offset(id, DESCRIPTIONS)).readLine();
+    }
+
+    /**
+     * Read one room's exits.
+     *
+     * @param id Room id (0 is the start room)
+     * @return exit labels mapped to target room ids, in file order
+     * @throws IOException if the file can not be read or is malformed
+     */
+    public Map<String, Integer> getExits(int id) throws IOException {
+        LineReader in = new LineReader(offset(id, EXITS));
+        int count = parseCount(in.readLine());
+        Map<String, Integer> exits = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String line = in.readLine();
+            int pos = line.indexOf(' ');
+            if (pos < 0) {
+                throw new IOException("bad exit line");
+            }
+            try {
+                exits.put(line.substring(pos + 1),
+                        Integer.parseInt(line.substring(0, pos)));
+            } catch (NumberFormatException ex) {
+                throw new IOException("bad exit line", ex);
+            }
+        }
+        return Collections.unmodifiableMap(exits);
+    }
+
+    /**
+     * Read and decode one room's contents.
+     * <br />Note: unlike the loaders, a saved Player is included.
+     *
+     * @param id Room id (0 is the start room)
+     * @return Things in the room, in file order
+     * @throws IOException if the file can not be read or is malformed
+     */
+    public List<Thing> getContents(int id) throws IOException {
+        LineReader in = new LineReader(offset(id, CONTENTS));
+        int count = parseCount(in.readLine());
+        List<Thing> contents = new ArrayList<>();
+        // decodeThing only needs a non-null start room
+        Room root = new Room("");
+        for (int i = 0; i < count; i++) {
+            Thing thing = MapIO.decodeThing(in.readLine(), root);
+            if (thing == null) {
+                throw new IOException("bad item line");
+            }
+            contents.add(thing);
+        }
+        return Collections.unmodifiableList(contents);
+    }
+
+    /**
+     * Read the layout of a mapped file from its footer.
+     *
+     * @param buffer Buffer holding a whole map file
+     * @return layout of the file or null if it has no valid footer
+     */
+    static MapLayout layoutOf(ByteBuffer buffer) {
+        int size = buffer.limit();
+        if (size < TRAILER_SIZE + HEADER_SIZE) {
+            return null;
+        }
+        for (int i = 0; i < TRAILER_MAGIC.length; i++) {
+            if (buffer.get(size - TRAILER_MAGIC.length + i)
+                    != TRAILER_MAGIC[i]) {
+                return null;
+            }
+        }
+        long footer = buffer.getLong(size - TRAILER_SIZE);
+        if (footer < 0 || footer > size - TRAILER_SIZE - HEADER_SIZE) {
+            return null;
+        }
+        for (int i = 0; i < FOOTER_MAGIC.length; i++) {
+            if (buffer.get((int) footer + i) != FOOTER_MAGIC[i]) {
+                return null;
+            }
+        }
+        if (buffer.get((int) footer + FOOTER_MAGIC.length) != VERSION) {
+            return null;
+        }
+        int at = (int) footer + FOOTER_MAGIC.length + 1;
+        int roomCount = buffer.getInt(at);
+        at += 4 + 4 * 8;
+        long player = buffer.getLong(at);
+        at += 8;
+        if (roomCount <= 0
+                || at + (long) roomCount * ENTRY_SIZE != size - TRAILER_SIZE) {
+            return null;
+        }
+        MapLayout layout = new MapLayout(roomCount);
+        layout.player = (int) player;
+        for (int i = 0; i < roomCount; i++) {
+            layout.descriptions[i] = (int) buffer.getLong(at);
+            layout.exits[i] = (int) buffer.getLong(at + 8);
+            layout.contents[i] = (int) buffer.getLong(at + 16);
+            at += ENTRY_SIZE;
+        }
+        return layout;
+    }
+
+    /**
+     * Close the file.
+     *
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Parse a count line.
+     */
+    private static int parseCount(String line) throws IOException {
+        try {
+            return Integer.parseInt(line);
+        } catch (NumberFormatException ex) {
+            throw new IOException("bad count line", ex);
+        }
+    }
+
+    /**
+     * Read exactly size bytes at a position.
+     */
+    private ByteBuffer read(long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads lines of text from a position in the file.
+     */
+    private class LineReader {
+        // Bytes read from the file but not yet used
+        private final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        // File position of the end of buffer's contents
+        private long position;
+
+        LineReader(long position) {
+            this.position = position;
+            buffer.limit(0);
+        }
+
+        /**
+         * @return the next line without its terminator
+         * @throws IOException if the file ends first
+         */
+        String readLine() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                    int count = channel.read(buffer, position);
+                    buffer.flip();
+                    if (count <= 0) {
+                        throw new EOFException();
+                    }
+                    position += count;
+                }
+                byte b = buffer.get();
+                if (b == '\n') {
+                    break;
+                }
+                line.write(b);
+            }
+            byte[] bytes = line.toByteArray();
+            int length = bytes.length;
+            if (length > 0 && bytes[length - 1] == '\r') {
+                length--;
+            }
+            return new String(bytes, 0, length, charset);
+        }
+    }
+
+    /**
+     * Records line offsets while a map is written and appends the footer.
+     */
+    static class Builder {
+        // Writer the map is being written to
+        private final MapWriter out;
+        // Per-room offsets for each section
+        private final long[][] rooms;
+        // Section offsets
+        private final long[] sections = new long[4];
+        // Offset of the player line
+        private long player = -1;
+
+        /**
+         * @param out Writer the map is being written to
+         * @param roomCount Number of rooms in the map
+         */
+        Builder(MapWriter out, int roomCount) {
+            this.out = out;
+            rooms = new long[3][roomCount];
+        }
+
+        /**
+         * Record that a room's description is about to be written.
+         *
+         * @param id Room id
+         * @throws IOException if writing fails
+         */
+        void description(int id) throws IOException {
+            mark(DESCRIPTIONS, id);
+        }
+
+        /**
+         * Record that a room's exit block is about to be written.
+         *
+         * @param id Room id
+         * @throws IOException if writing fails
+         */
+        void exits(int id) throws IOException {
+            mark(EXITS, id);
+        }
+
+        /**
+         * Record that a room's content block is about to be written.
+         *
+         * @param id Room id
+         * @throws IOException if writing fails
+         */
+        void contents(int id) throws IOException {
+            mark(CONTENTS, id);
+        }
+
+        /**
+         * Record that the player's line is about to be written.
+         *
+         * @throws IOException if writing fails
+         */
+        void player() throws IOException {
+            player = out.position();
+        }
+
+        /**
+         * Record the current position for a room's block.
+         */
+        private void mark(int section, int id) throws IOException {
+            long position = out.position();
+            rooms[section][id] = position;
+            if (id == 0) {
+                sections[section] = position;
+            }
+        }
+
+        /**
+         * Append the footer after the content section.
+         *
+         * @throws IOException if writing fails
+         */
+        void writeFooter() throws IOException {
+            long footer = out.position();
+            sections[3] = footer;
+            out.write(FOOTER_MAGIC);
+            out.write(new byte[]{VERSION});
+            out.writeInt(rooms[0].length);
+            for (long section : sections) {
+                out.writeLong(section);
+            }
+            out.writeLong(player);
+            for (int i = 0; i < rooms[0].length; i++) {
+                out.writeLong(rooms[DESCRIPTIONS][i]);
+                out.writeLong(rooms[EXITS][i]);
+                out.writeLong(rooms[CONTENTS][i]);
+            }
+            out.writeLong(footer);
+            out.write(TRAILER_MAGIC);
+        }
+    }
+}
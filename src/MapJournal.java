@@ -0,0 +1,845 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a map incrementally: a full snapshot written by
+ * {@link MapIO#saveMap(Room, String) saveMap} followed by journal segments
+ * which only hold the rooms changed since the previous save.
+ * <br />The journal listens to every room of the map (and the Mobs in
+ * them) and remembers which ones have changed. {@link #save()} appends
+ * the current state of just those rooms to the newest segment, so saving
+ * takes time proportional to what has changed rather than to the size of
+ * the map.
+ * <br />Segments are named <i>filename</i>.journal.<i>n</i>. Records hold the
+ * whole state of a room (or of the player), so replaying one twice gives
+ * the same result, and each save ends with a commit line so a save cut
+ * short by a crash is ignored. Once the segments grow larger than the
+ * snapshot they are merged into a new snapshot by a background thread.
+ * <br />Each {@link #create(Room, Player, String) create} starts a new
+ * lineage, a random number written at the top of every segment. The file
+ * <i>filename</i>.journal records the lineage of each snapshot by its
+ * checksum, and only segments of the snapshot's lineage are replayed, so
+ * segments left behind by an earlier snapshot are never applied to a new
+ * one. A new snapshot is always in place before old segments are
+ * deleted; a crash in between leaves either the old snapshot with its
+ * segments or the new one.
+ * <br />Opening a journal gives the same map {@link MapIO#loadMap(String)
+ * loadMap} would give for a full save made at the time of the last
+ * {@link #save() save}. Note: loadMap itself only reads the snapshot.
+ */
+public class MapJournal implements MapListener, Closeable {
+
+    // Text between the snapshot name and the segment number
+    private static final String SEGMENT = ".journal.";
+    // Added to the snapshot name for the file of lineages
+    private static final String LINEAGES = ".journal";
+    // Start of the first line of a segment, followed by its lineage
+    private static final String HEADER = "J ";
+    // Source of new lineages
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // Smallest journal size which triggers a compaction
+    private static final long MIN_COMPACT_BYTES = 64 * 1024;
+
+    // Filename of the snapshot
+    private final String filename;
+    // Lineage written at the top of each new segment
+    private final long lineage;
+    // Rooms by id (their position in the snapshot)
+    private final List<Room> rooms;
+    // Id of each room
+    private final Map<Room, Integer> ids = new IdentityHashMap<>();
+    // Room each watched Mob was last seen entering
+    private final Map<Thing, Room> mobs = new IdentityHashMap<>();
+    // Ids of rooms changed since the last save
+    private final TreeSet<Integer> dirty = new TreeSet<>();
+    // The player of the map
+    private final Player player;
+    // Has the player changed since the last save?
+    private boolean playerDirty;
+    // Number of the segment saves are appended to
+    private int segment;
+    // Bytes in segments which have not been compacted
+    private long journalBytes;
+    // Bytes appended before a compaction is started (set again by each
+    // compaction from the size of the new snapshot)
+    private volatile long compactBytes;
+    // Background compaction (null if none has been started)
+    private Thread compaction;
+
+    /**
+     * @param filename Filename of the snapshot
+     * @param lineage Lineage of the snapshot
+     * @param rooms Rooms by id
+     * @param player The player
+     * @param segment First segment number to append to
+     */
+    private MapJournal(String filename, long lineage, List<Room> rooms,
+            Player player, int segment) {
+        this.filename = filename;
+        this.lineage = lineage;
+        this.rooms = rooms;
+        this.player = player;
+        this.segment = segment;
+        compactBytes = Math.max(MIN_COMPACT_BYTES,
+                new File(filename).length());
+        for (int id = 0; id < rooms.size(); id++) {
+            listen(rooms.get(id), id);
+        }
+        player.addListener(this);
+    }
+
+    /**
+     * Write a full snapshot of a map and start journaling changes to it.
+     * Any journal segments left from an earlier snapshot of the same
+     * filename are deleted once the new snapshot is in place.
+     *
+     * @param root Start room
+     * @param player The player (which must be in one of the rooms)
+     * @param filename Filename to write the snapshot to
+     * @return the journal or null if the snapshot could not be written
+     *         (the old snapshot and its segments are then left as they
+     *         were)
+     */
+    public static MapJournal create(Room root, Player player,
+            String filename) {
+        MapIO.SeqWalker walker = new MapIO.SeqWalker(root);
+        walker.walk();
+        List<Room> rooms = new ArrayList<>(walker.seq);
+        long lineage = RANDOM.nextLong();
+        if (!install(filename, rooms, lineage)) {
+            return null;
+        }
+        int[] old = segments(filename);
+        // segments of the old lineage are ignored from now on, so it does
+        // not matter if some can not be deleted
+        for (int number : old) {
+            segmentFile(filename, number).delete();
+        }
+        // carry on numbering so a segment left behind is not appended to
+        int next = (old.length == 0) ? 1 : old[old.length - 1] + 1;
+        return new MapJournal(filename, lineage, rooms, player, next);
+    }
+
+    /**
+     * Read a snapshot, replay its journal and start journaling changes.
+     * <br />A map saved by {@link MapIO#saveMap(Room, String) saveMap}
+     * has no journal until one is started with
+     * {@link #create(Room, Player, String) create}; opening it gives null
+     * and writes nothing, so the caller can load it as usual.
+     * <br />As with {@link MapIO#loadMap(String) loadMap} the player is
+     * not in any room; the caller should put it in the start room.
+     *
+     * @param filename Filename of the snapshot
+     * @return the journal or null if the map has no journal, could not be
+     *         read or has no player
+     */
+    public static MapJournal open(String filename) {
+        int[] numbers = segments(filename);
+        if (numbers.length == 0
+                && !new File(filename + LINEAGES).exists()) {
+            return null;
+        }
+        int last = (numbers.length == 0) ? 0 : numbers[numbers.length - 1];
+        Long known;
+        try {
+            known = lineageOf(filename, checksum(new File(filename)));
+        } catch (IOException ex) {
+            return null;
+        }
+        if (known == null && numbers.length == 0) {
+            // only lineages of other snapshots: this one was written over
+            // by a plain save
+            return null;
+        }
+        // with no lineage recorded (a snapshot written before lineages were
+        // kept) only segments without a header belong to the snapshot
+        List<Room> rooms = new ArrayList<>();
+        Player[] player = new Player[1];
+        if (!replay(filename, last, known, rooms, player)
+                || player[0] == null) {
+            return null;
+        }
+        long lineage = (known == null) ? RANDOM.nextLong() : known;
+        if (known == null) {
+            try {
+                recordLineage(filename, checksum(new File(filename)),
+                        lineage, false);
+            } catch (IOException ex) {
+                return null;
+            }
+        }
+        MapJournal journal = new MapJournal(filename, lineage, rooms,
+                player[0], last + 1);
+        for (int number : numbers) {
+            journal.journalBytes += segmentFile(filename, number).length();
+        }
+        return journal;
+    }
+
+    /**
+     * @return filename of the snapshot
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * @return the start room of the map
+     */
+    public Room getStartRoom() {
+        return rooms.get(0);
+    }
+
+    /**
+     * @return the player of the map
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Append every room (and the player) changed since the last save to
+     * the journal. May start a background compaction.
+     *
+     * @return true if successful (changes are kept for the next save
+     *         otherwise)
+     */
+    public boolean save() {
+        if (dirty.isEmpty() && !playerDirty) {
+            return true;
+        }
+        StringBuilder batch = new StringBuilder();
+        for (int id : dirty) {
+            writeRoom(batch, id);
+        }
+        if (playerDirty) {
+            batch.append("P\n").append(player.repr()).append('\n');
+        }
+        batch.append(".\n");
+        File file = segmentFile(filename, segment);
+        if (file.length() == 0) {
+            batch.insert(0, HEADER + Long.toHexString(lineage) + "\n");
+        }
+        byte[] bytes = batch.toString().getBytes();
+        try {
+            FileOutputStream out = new FileOutputStream(file, true);
+            try {
+                out.write(bytes);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } catch (IOException ex) {
+            // part of the save may have been written, so start a new
+            // segment rather than appending after it
+            segment++;
+            return false;
+        }
+        dirty.clear();
+        playerDirty = false;
+        journalBytes += bytes.length;
+        if (journalBytes > compactBytes) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Start merging the journal into a new snapshot in the background.
+     * Later saves go to a new segment, so they can continue while the
+     * merge runs. Does nothing if a compaction is already running.
+     *
+     * @return true if a compaction was started
+     */
+    public synchronized boolean compact() {
+        if (compaction != null && compaction.isAlive()) {
+            return false;
+        }
+        final int last = segment;
+        segment++;
+        journalBytes = 0;
+        compaction = new Thread(() -> {
+            long size = merge(filename, lineage, last);
+            if (size >= 0) {
+                compactBytes = Math.max(MIN_COMPACT_BYTES, size);
+            }
+        }, "map-journal-compaction");
+        compaction.setDaemon(true);
+        compaction.start();
+        return true;
+    }
+
+    /**
+     * Stop journaling and wait for any compaction to finish.
+     * Unsaved changes are discarded.
+     */
+    @Override
+    public void close() {
+        for (Room room : rooms) {
+            room.removeListener(this);
+        }
+        for (Thing mob : mobs.keySet()) {
+            mob.removeListener(this);
+        }
+        player.removeListener(this);
+        Thread running;
+        synchronized (this) {
+            running = compaction;
+        }
+        if (running == null) {
+            return;
+        }
+        boolean interrupted = false;
+        while (running.isAlive()) {
+            try {
+                running.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void thingEntered(Room room, Thing thing) {
+        if (thing instanceof Player) { // saved separately
+            return;
+        }
+        changed(room);
+        if (thing instanceof Mob && mobs.put(thing, room) == null) {
+            thing.addListener(this);
+        }
+    }
+
+    @Override
+    public void thingLeft(Room room, Thing thing) {
+        if (!(thing instanceof Player)) {
+            changed(room);
+        }
+    }
+
+    @Override
+    public void exitAdded(Room room, String label, Room target) {
+        track(target);
+        changed(room);
+    }
+
+    @Override
+    public void exitRemoved(Room room, String label) {
+        changed(room);
+    }
+
+    @Override
+    public void descriptionChanged(Room room) {
+        changed(room);
+    }
+
+    @Override
+    public void healthChanged(Mob mob) {
+        if (mob == player) {
+            playerDirty = true;
+            return;
+        }
+        Room room = mobs.get(mob);
+        if (room != null) {
+            changed(room);
+        }
+    }
+
+    /**
+     * Remember that a room needs saving.
+     *
+     * @param room Room which changed
+     */
+    private void changed(Room room) {
+        Integer id = ids.get(room);
+        if (id != null) {
+            dirty.add(id);
+        }
+    }
+
+    /**
+     * Start listening to a room and every room reachable from it which is
+     * not yet being listened to. These rooms are new to the map, so they
+     * are given the next free ids and are saved by the next save.
+     *
+     * @param start Room to start from
+     */
+    private void track(Room start) {
+        List<Room> todo = new ArrayList<>();
+        todo.add(start);
+        while (!todo.isEmpty()) {
+            Room room = todo.remove(todo.size() - 1);
+            if (ids.containsKey(room)) {
+                continue;
+            }
+            int id = rooms.size();
+            rooms.add(room);
+            dirty.add(id);
+            listen(room, id);
+            for (Room exit : room.getExits().values()) {
+                if (!ids.containsKey(exit)) {
+                    todo.add(exit);
+                }
+            }
+        }
+    }
+
+    /**
+     * Start listening to a room and the Mobs in it.
+     *
+     * @param room Room to listen to
+     * @param id Id of the room
+     */
+    private void listen(Room room, int id) {
+        ids.put(room, id);
+        room.addListener(this);
+        for (Thing thing : room.getContents()) {
+            if (thing instanceof Mob && !(thing instanceof Player)
+                    && mobs.put(thing, room) == null) {
+                thing.addListener(this);
+            }
+        }
+    }
+
+    /**
+     * Encode the whole state of a room (other than the player).
+     *
+     * @param out Destination
+     * @param id Id of the room
+     */
+    private void writeRoom(StringBuilder out, int id) {
+        Room room = rooms.get(id);
+        out.append("R ").append(id).append('\n');
+        out.append(room.getDescription()).append('\n');
+        Map<String, Room> exits = room.getExits();
+        out.append(exits.size()).append('\n');
+        for (Map.Entry<String, Room> exit : exits.entrySet()) {
+            out.append(ids.get(exit.getValue())).append(' ')
+                    .append(exit.getKey()).append('\n');
+        }
+        List<String> things = new ArrayList<>();
+        for (Thing thing : room.getContents()) {
+            if (!(thing instanceof Player)) {
+                things.add(thing.repr());
+            }
+        }
+        out.append(things.size()).append('\n');
+        for (String thing : things) {
+            out.append(thing).append('\n');
+        }
+    }
+
+    /**
+     * Merge a snapshot and its segments up to last into a new snapshot,
+     * then delete those segments. Failures leave the files unchanged.
+     *
+     * @param filename Filename of the snapshot
+     * @param lineage Lineage of the snapshot
+     * @param last Number of the last segment to merge
+     * @return size of the new snapshot, or -1 if the merge failed
+     */
+    private static long merge(String filename, long lineage, int last) {
+        List<Room> rooms = new ArrayList<>();
+        Player[] player = new Player[1];
+        if (!replay(filename, last, lineage, rooms, player)
+                || player[0] == null) {
+            return -1;
+        }
+        rooms.get(0).loadThing(player[0]);
+        if (!install(filename, rooms, lineage)) {
+            return -1;
+        }
+        // replaying these over the new snapshot would change nothing, so
+        // it does not matter if some are left behind
+        for (int number : segments(filename)) {
+            if (number <= last) {
+                segmentFile(filename, number).delete();
+            }
+        }
+        return new File(filename).length();
+    }
+
+    /**
+     * Write rooms to a new snapshot and put it in place of the old one,
+     * recording its lineage first. The old snapshot keeps its lineage
+     * until the new one is in place.
+     *
+     * @param filename Filename of the snapshot
+     * @param rooms Rooms by id
+     * @param lineage Lineage of the new snapshot
+     * @return true if the new snapshot is in place
+     */
+    private static boolean install(String filename, List<Room> rooms,
+            long lineage) {
+        File temp = new File(filename + ".tmp");
+        if (!MapIO.saveRooms(rooms, temp.getPath())) {
+            temp.delete();
+            return false;
+        }
+        try {
+            long checksum = checksum(temp);
+            recordLineage(filename, checksum, lineage, true);
+            replace(temp, new File(filename));
+            // only the snapshot now in place needs its lineage
+            recordLineage(filename, checksum, lineage, false);
+        } catch (IOException ex) {
+            temp.delete();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Read a snapshot and apply its segments up to last.
+     *
+     * @param filename Filename of the snapshot
+     * @param last Number of the last segment to apply
+     * @param lineage Lineage of the snapshot (null to apply only segments
+     *                without a header)
+     * @param rooms Filled with the rooms by id
+     * @param player Set to the player
+     * @return true if successful
+     */
+    private static boolean replay(String filename, int last, Long lineage,
+            List<Room> rooms, Player[] player) {
+        Room[] snapshot = MapIO.loadRooms(filename, player);
+        if (snapshot == null) {
+            return false;
+        }
+        rooms.addAll(Arrays.asList(snapshot));
+        for (int number : segments(filename)) {
+            if (number > last) {
+                break;
+            }
+            try {
+                if (!replaySegment(segmentFile(filename, number), lineage,
+                        rooms, player)) {
+                    return false;
+                }
+            } catch (IOException ex) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply every complete save in a segment, unless it belongs to
+     * another lineage.
+     *
+     * @param file Segment to read
+     * @param lineage Lineage of the snapshot (null if unknown)
+     * @param rooms Rooms by id (new rooms are added)
+     * @param player Set to the player if the segment holds one
+     * @return false if the segment is not valid
+     * @throws IOException if the segment can not be read
+     */
+    private static boolean replaySegment(File file, Long lineage,
+            List<Room> rooms, Player[] player) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file)));
+        try {
+            List<String> batch = new ArrayList<>();
+            String line = in.readLine();
+            if (line != null && line.startsWith(HEADER)) {
+                Long header;
+                try {
+                    header = Long.parseUnsignedLong(
+                            line.substring(HEADER.length()), 16);
+                } catch (NumberFormatException ex) {
+                    return false;
+                }
+                if (!header.equals(lineage)) {
+                    // left behind by an earlier snapshot
+                    return true;
+                }
+                line = in.readLine();
+            }
+            for (; line != null; line = in.readLine()) {
+                batch.add(line);
+                if (line.equals(".") && isComplete(batch)) {
+                    if (!apply(batch, rooms, player)) {
+                        return false;
+                    }
+                    batch.clear();
+                }
+            }
+            // anything left is a save which did not finish
+            return true;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Does a batch end with its commit line (rather than with a room
+     * description which happens to be a full stop)?
+     *
+     * @param batch Lines ending in "."
+     * @return true if the batch is a whole save
+     */
+    private static boolean isComplete(List<String> batch) {
+        int at = 0;
+        try {
+            while (at < batch.size() - 1) {
+                String header = batch.get(at);
+                if (header.equals("P")) {
+                    at += 2;
+                } else if (header.startsWith("R ")) {
+                    at += 2;
+                    at += 1 + Integer.parseInt(batch.get(at));
+                    at += 1 + Integer.parseInt(batch.get(at));
+                } else {
+                    return false;
+                }
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            return false;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+        return at == batch.size() - 1;
+    }
+
+    /**
+     * Apply the records of one save.
+     *
+     * @param batch Lines of the save, ending with its commit line
+     * @param rooms Rooms by id (new rooms are added)
+     * @param player Set to the player if the save holds one
+     * @return false if a record is not valid
+     */
+    private static boolean apply(List<String> batch, List<Room> rooms,
+            Player[] player) {
+        int at = 0;
+        try {
+            while (at < batch.size() - 1) {
+                String header = batch.get(at++);
+                if (header.equals("P")) {
+                    Thing thing = MapIO.decodeThing(batch.get(at++),
+                            rooms.get(0));
+                    if (!(thing instanceof Player)) {
+                        return false;
+                    }
+                    player[0] = (Player) thing;
+                    continue;
+                }
+                Room room = room(rooms, Integer.parseInt(header.substring(2)));
+                room.clear();
+                room.loadDescription(batch.get(at++));
+                int exits = Integer.parseInt(batch.get(at++));
+                for (int i = 0; i < exits; i++) {
+                    String exit = batch.get(at++);
+                    int space = exit.indexOf(' ');
+                    if (!room.loadExit(exit.substring(space + 1), room(rooms,
+                            Integer.parseInt(exit.substring(0, space))))) {
+                        return false;
+                    }
+                }
+                int things = Integer.parseInt(batch.get(at++));
+                for (int i = 0; i < things; i++) {
+                    Thing thing = MapIO.decodeThing(batch.get(at++),
+                            rooms.get(0));
+                    if (thing == null) {
+                        return false;
+                    }
+                    room.loadThing(thing);
+                }
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            return false;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get a room by id, creating rooms which were added after the
+     * snapshot was written.
+     *
+     * @param rooms Rooms by id
+     * @param id Id of the room
+     * @return the room
+     */
+    private static Room room(List<Room> rooms, int id) {
+        if (id < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (rooms.size() <= id) {
+            rooms.add(new Room(""));
+        }
+        return rooms.get(id);
+    }
+
+    /**
+     * Find the segments of a snapshot.
+     *
+     * @param filename Filename of the snapshot
+     * @return segment numbers in increasing order
+     */
+    private static int[] segments(String filename) {
+        File snapshot = new File(filename).getAbsoluteFile();
+        String prefix = snapshot.getName() + SEGMENT;
+        String[] names = snapshot.getParentFile().list();
+        if (names == null) {
+            return new int[0];
+        }
+        int[] numbers = new int[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (name.startsWith(prefix)) {
+                try {
+                    numbers[count] = Integer.parseInt(
+                            name.substring(prefix.length()));
+                    count++;
+                } catch (NumberFormatException ex) {
+                    // not one of ours
+                }
+            }
+        }
+        numbers = Arrays.copyOf(numbers, count);
+        Arrays.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * @param filename Filename of the snapshot
+     * @param number Segment number
+     * @return the segment's file
+     */
+    private static File segmentFile(String filename, int number) {
+        return new File(filename + SEGMENT + number);
+    }
+
+    /**
+     * @param file File to read
+     * @return CRC-32 of the file's bytes
+     * @throws IOException if the file can not be read
+     */
+    private static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Find the lineage of a snapshot.
+     *
+     * @param filename Filename of the snapshot
+     * @param checksum Checksum of the snapshot
+     * @return the lineage or null if none is recorded for it
+     * @throws IOException if the lineages can not be read
+     */
+    private static Long lineageOf(String filename, long checksum)
+            throws IOException {
+        return readLineages(filename).get(checksum);
+    }
+
+    /**
+     * Record the lineage of a snapshot, replacing the file of lineages
+     * atomically where possible.
+     *
+     * @param filename Filename of the snapshot
+     * @param checksum Checksum of the snapshot
+     * @param lineage Its lineage
+     * @param keep true to keep the lineages of other snapshots
+     * @throws IOException if the lineages can not be written
+     */
+    private static void recordLineage(String filename, long checksum,
+            long lineage, boolean keep) throws IOException {
+        Map<Long, Long> lineages = keep ? readLineages(filename)
+                : new HashMap<Long, Long>();
+        lineages.put(checksum, lineage);
+        File temp = new File(filename + LINEAGES + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            PrintWriter writer = new PrintWriter(out);
+            for (Map.Entry<Long, Long> entry : lineages.entrySet()) {
+                writer.print(Long.toHexString(entry.getKey()) + " "
+                        + Long.toHexString(entry.getValue()) + "\n");
+            }
+            writer.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        replace(temp, new File(filename + LINEAGES));
+    }
+
+    /**
+     * @param filename Filename of the snapshot
+     * @return lineage of each snapshot checksum recorded (empty if none)
+     * @throws IOException if the file of lineages can not be read
+     */
+    private static Map<Long, Long> readLineages(String filename)
+            throws IOException {
+        Map<Long, Long> lineages = new HashMap<>();
+        File file = new File(filename + LINEAGES);
+        if (!file.exists()) {
+            return lineages;
+        }
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file)))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int space = line.indexOf(' ');
+                try {
+                    lineages.put(Long.parseUnsignedLong(
+                            line.substring(0, space), 16),
+                            Long.parseUnsignedLong(
+                                    line.substring(space + 1), 16));
+                } catch (RuntimeException ex) {
+                    throw new IOException("bad lineage: " + line, ex);
+                }
+            }
+        }
+        return lineages;
+    }
+
+    /**
+     * Move a file over another, atomically where possible.
+     *
+     * @param from File to move
+     * @param to File to replace
+     * @throws IOException if the move fails
+     */
+    private static void replace(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(from.toPath(), to.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Where each room's lines start in a map file written by
+ * {@link MapIO#saveMap(Room, String)}.
+ * Found with one pass which only parses counts.
+ */
+class MapLayout {
+
+    // Where each room's description line starts
+    final int[] descriptions;
+    // Where each room's exit count line starts
+    final int[] exits;
+    // Where each room's item count line starts
+    final int[] contents;
+    // Where the last Explorer line starts (-1 if there is none)
+    int player = -1;
+
+    /**
+     * @param rooms Number of rooms in the map
+     */
+    MapLayout(int rooms) {
+        descriptions = new int[rooms];
+        exits = new int[rooms];
+        contents = new int[rooms];
+    }
+
+    /**
+     * @return number of rooms in the map
+     */
+    int size() {
+        return descriptions.length;
+    }
+
+    /**
+     * Find where each room's lines start.
+     *
+     * @param buffer Buffer holding the whole file
+     * @param charset Charset the file was written in
+     * @return layout of the file or null if it is not a valid map
+     * @throws NumberFormatException if a count is malformed
+     * @throws IndexOutOfBoundsException if the file ends early
+     */
+    static MapLayout scan(ByteBuffer buffer, Charset charset) {
+        MapScanner in = new MapScanner(buffer, charset, 0);
+        int idcap = in.readIntLine();
+        if (idcap <= 0) {
+            return null;
+        }
+        MapLayout layout = new MapLayout(idcap);
+        for (int i = 0; i < idcap; i++) {
+            layout.descriptions[i] = in.position();
+            if (!in.skipLine()) {
+                return null;
+            }
+        }
+        for (int i = 0; i < idcap; i++) {
+            layout.exits[i] = in.position();
+            int count = in.readIntLine();
+            for (int j = 0; j < count; j++) {
+                if (!in.skipLine()) {
+                    return null;
+                }
+            }
+        }
+        for (int i = 0; i < idcap; i++) {
+            layout.contents[i] = in.position();
+            int count = in.readIntLine();
+            for (int j = 0; j < count; j++) {
+                // Explorers are the only Players which are saved
+                if (in.peek() == 'E') {
+                    layout.player = in.position();
+                }
+                if (!in.skipLine()) {
+                    return null;
+                }
+            }
+        }
+        return layout;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Receives changes made to {@link Room Room}s and {@link Thing Thing}s.
+ * <br />Register with {@link Room#addListener(MapListener)} or
+ * {@link Thing#addListener(MapListener)}. Every method is called after the
+ * change has been made and does nothing by default.
+ */
+public interface MapListener {
+
+    /**
+     * A Thing was added to a Room.
+     *
+     * @param room Room which changed
+     * @param thing Thing which entered
+     */
+    default void thingEntered(Room room, Thing thing) {
+    }
+
+    /**
+     * A Thing was removed from a Room.
+     *
+     * @param room Room which changed
+     * @param thing Thing which left
+     */
+    default void thingLeft(Room room, Thing thing) {
+    }
+
+    /**
+     * An exit was added to a Room.
+     *
+     * @param room Room which changed
+     * @param label Name of the new exit
+     * @param target Room the exit goes to
+     */
+    default void exitAdded(Room room, String label, Room target) {
+    }
+
+    /**
+     * An exit was removed from a Room.
+     *
+     * @param room Room which changed
+     * @param label Name of the removed exit
+     */
+    default void exitRemoved(Room room, String label) {
+    }
+
+    /**
+     * A Room's description was changed.
+     *
+     * @param room Room which changed
+     */
+    default void descriptionChanged(Room room) {
+    }
+
+    /**
+     * A Thing was put into a Player's inventory.
+     *
+     * @param player Player which changed
+     * @param thing Thing which was added
+     */
+    default void inventoryAdded(Player player, Thing thing) {
+    }
+
+    /**
+     * A Thing was removed from a Player's inventory.
+     *
+     * @param player Player which changed
+     * @param thing Thing which was dropped
+     */
+    default void inventoryDropped(Player player, Thing thing) {
+    }
+
+    /**
+     * A Mob's health changed.
+     *
+     * @param mob Mob which changed
+     */
+    default void healthChanged(Mob mob) {
+    }
+}
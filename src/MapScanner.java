@@ -0,0 +1,262 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Cursor over a map file held in a {@link ByteBuffer} (usually a memory
+ * mapped file).
+ * <br />Counts and room ids are parsed straight from the bytes, Strings are
+ * only created for the parts of a line which are kept.
+ * All reads use absolute positions so several scanners may share one buffer.
+ */
+class MapScanner {
+
+    // Labels which are reused instead of being decoded for every exit
+    private static final String[] COMMON_LABELS = {
+            "North", "South", "East", "West"
+    };
+
+    // Buffer holding the file contents
+    private final ByteBuffer buffer;
+    // Charset used to decode kept Strings
+    private final Charset charset;
+    // Position of the next unread byte
+    private int position;
+    // Scratch space used to copy bytes out of the buffer for decoding
+    private byte[] scratch = new byte[256];
+
+    /**
+     * @param buffer Buffer holding the map file
+     * @param charset Charset the file was written in
+     * @param position Position to start reading from
+     */
+    MapScanner(ByteBuffer buffer, Charset charset, int position) {
+        this.buffer = buffer;
+        this.charset = charset;
+        this.position = position;
+    }
+
+    /**
+     * @return position of the next unread byte
+     */
+    int position() {
+        return position;
+    }
+
+    /**
+     * Move the cursor.
+     *
+     * @param position Position of the next byte to read
+     */
+    void seek(int position) {
+        this.position = position;
+    }
+
+    /**
+     * @return true if there are no more bytes to read
+     */
+    boolean atEnd() {
+        return position >= buffer.limit();
+    }
+
+    /**
+     * @return the next unread byte without moving past it, or -1 at the end
+     */
+    int peek() {
+        return atEnd() ? -1 : buffer.get(position);
+    }
+
+    /**
+     * Find the end of the current line. As with
+     * {@link java.io.BufferedReader#readLine() BufferedReader}, a line ends
+     * at '\n', '\r' or "\r\n".
+     *
+     * @return position of the line terminator (or the buffer limit)
+     */
+    private int lineEnd() {
+        int limit = buffer.limit();
+        int i = position;
+        while (i < limit) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Move past the terminator of a line ending at end.
+     *
+     * @param end position of the line terminator
+     */
+    private void finishLine(int end) {
+        int limit = buffer.limit();
+        if (end < limit && buffer.get(end) == '\r') {
+            end++;
+            if (end < limit && buffer.get(end) == '\n') {
+                end++;
+            }
+            position = end;
+        } else {
+            position = (end < limit) ? end + 1 : end;
+        }
+    }
+
+    /**
+     * Parse the digits in [start, end) as an int.
+     * Accepts the same input as {@link Integer#parseInt(String)}.
+     *
+     * @param start first byte
+     * @param end end of the number (exclusive)
+     * @return parsed value
+     * @throws NumberFormatException if the bytes are not a valid int
+     */
+    private int parseInt(int start, int end) {
+        if (start >= end) {
+            throw new NumberFormatException("empty number");
+        }
+        boolean negative = false;
+        int i = start;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = (first == '-');
+            i++;
+            if (i == end) {
+                throw new NumberFormatException("lone sign");
+            }
+        }
+        // accumulate negatively so Integer.MIN_VALUE can be represented
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("bad digit");
+            }
+            if (result < (limit + digit) / 10) {
+                throw new NumberFormatException("overflow");
+            }
+            result = result * 10 - digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Read a line holding a single int (eg a count).
+     *
+     * @return parsed value
+     * @throws NumberFormatException if the line is not a valid int
+     * @throws IndexOutOfBoundsException if there are no more lines
+     */
+    int readIntLine() {
+        if (atEnd()) {
+            throw new IndexOutOfBoundsException("no more lines");
+        }
+        int end = lineEnd();
+        int value = parseInt(position, end);
+        finishLine(end);
+        return value;
+    }
+
+    /**
+     * Read a whole line as a String.
+     *
+     * @return the line (without terminator) or null if there are no more lines
+     */
+    String readLine() {
+        if (atEnd()) {
+            return null;
+        }
+        int end = lineEnd();
+        String line = decode(position, end);
+        finishLine(end);
+        return line;
+    }
+
+    /**
+     * Move past the current line without decoding it.
+     *
+     * @return false if there are no more lines
+     */
+    boolean skipLine() {
+        if (atEnd()) {
+            return false;
+        }
+        finishLine(lineEnd());
+        return true;
+    }
+
+    /**
+     * Read an exit line of the form "target label".
+     * The target is returned and the label is passed to the caller
+     * through labelOut[0].
+     *
+     * @param labelOut single element array which receives the label
+     * @return target room id
+     * @throws NumberFormatException if the line is malformed
+     * @throws IndexOutOfBoundsException if there are no more lines
+     */
+    int readExit(String[] labelOut) {
+        if (atEnd()) {
+            throw new IndexOutOfBoundsException("no more lines");
+        }
+        int end = lineEnd();
+        int space = position;
+        while (space < end && buffer.get(space) != ' ') {
+            space++;
+        }
+        if (space == end) {
+            throw new NumberFormatException("missing exit label");
+        }
+        int target = parseInt(position, space);
+        labelOut[0] = label(space + 1, end);
+        finishLine(end);
+        return target;
+    }
+
+    /**
+     * Decode an exit label, reusing a shared instance for the common ones.
+     *
+     * @param start first byte
+     * @param end end of the label (exclusive)
+     * @return label
+     */
+    private String label(int start, int end) {
+        for (String common : COMMON_LABELS) {
+            if (matches(common, start, end)) {
+                return common;
+            }
+        }
+        return decode(start, end);
+    }
+
+    /**
+     * Does [start, end) hold exactly the ASCII characters of text?
+     */
+    private boolean matches(String text, int start, int end) {
+        if (end - start != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (buffer.get(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode [start, end) into a String.
+     */
+    private String decode(int start, int end) {
+        int length = end - start;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(start + i);
+        }
+        return new String(scratch, 0, length, charset);
+    }
+}
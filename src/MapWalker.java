@@ -1,15 +1,29 @@
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /** Iterator over all reachable {@link Room Room}s
+* <br />Rooms are visited breadth first. Each room is queued at most once
+*     (when it is first seen), so the queue never holds more than the
+*     number of rooms however many exits lead to each of them.
 * @author JF
 */
 public class MapWalker
 {
     /** Rooms we have already processed */
-    private Set<Room> visited;
+    private RoomSet visited;
+    /** Rooms which have been added to toVisit (processed or not) */
+    private RoomSet queued;
     /** Current todo list */
     private Deque<Room> toVisit;
     private Room start;
+    /** Queues each exit of the room being processed, unless already seen */
+    private final BiConsumer<String, Room> enqueue = (label, exit) -> {
+        if (queued.add(exit)) {
+            toVisit.add(exit);
+        }
+    };
     
     /**
     * Choose start room but <B>Do not start the walk process.</B>
@@ -17,7 +31,9 @@ public class MapWalker
     * @param start Room to begin exploring from
     */
     public MapWalker(Room start) {
-        visited = new HashSet<Room>();
+        visited = new RoomSet();
+        queued = new RoomSet();
+        toVisit = new ArrayDeque<Room>();
         this.start = start;
     }
 
@@ -27,8 +43,9 @@ public class MapWalker
      * internally to ensure that parent state is cleared as well.
     */
     protected void reset() {
-        visited = new HashSet<Room>();
-        toVisit = new LinkedList<Room>();    
+        visited.clear();
+        queued.clear();
+        toVisit.clear();
     }
 
     /** 
@@ -39,27 +56,46 @@ public class MapWalker
     */
     public void walk() {
         reset();
+        queued.add(start);
         toVisit.add(start);    
         while (! toVisit.isEmpty()) {
             Room r = toVisit.removeFirst();
-            if (!visited.contains(r)) {
-                visited.add(r);
-                for (Room e : r.getExits().values()) {
-                    toVisit.add(e);
-                }
-                visit(r);
-            }
+            visited.add(r);
+            r.forEachExit(enqueue);
+            visit(r);
         }
     }
 
+    /** Lazy stream of the rooms reachable from start.
+    * <br />Rooms are found as the stream is consumed, so short-circuiting
+    *     operations such as findFirst or anyMatch stop walking as soon as
+    *     they have an answer. A sequential stream gives the rooms in the
+    *     same order as walk() visits them; a parallel stream gives them
+    *     in no particular order.
+    * <br />The map must not change while the stream is in use.
+    * @param start Room to begin exploring from
+    * @return stream of reachable rooms, each given once
+    * @throws NullPointerException if start is null
+    */
+    public static Stream<Room> stream(Room start) {
+        return StreamSupport.stream(new RoomSpliterator(start), false);
+    }
+
+    /** Lazy iterator over the rooms reachable from start, in the same
+    *     order as walk() visits them.
+    * @param start Room to begin exploring from
+    * @return iterator over reachable rooms
+    * @throws NullPointerException if start is null
+    */
+    public static Iterator<Room> iterator(Room start) {
+        return Spliterators.iterator(new RoomSpliterator(start));
+    }
+
     /**
     * @param room Room to query
     * @return true if room has been processed
     */
     public boolean hasVisited(Room room) {
-        if (room == null) {
-            return false;
-        }
         return visited.contains(room);
     }
 
@@ -0,0 +1,192 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Buffered character sink which encodes straight into a {@link FileChannel}.
+ * <br />Characters are encoded in the platform default charset (the same
+ * as {@link java.io.FileWriter}) through fixed size buffers, so the memory
+ * used does not depend on how much is written.
+ */
+class MapWriter implements Appendable, Closeable {
+
+    // Number of characters buffered before encoding
+    private static final int CHAR_BUFFER_SIZE = 8192;
+    // Number of bytes buffered before writing to the channel
+    private static final int BYTE_BUFFER_SIZE = 64 * 1024;
+
+    // Channel being written to
+    private final FileChannel channel;
+    // Encoder for the platform charset
+    private final CharsetEncoder encoder;
+    // Characters waiting to be encoded
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+    // Encoded bytes waiting to be written
+    private final ByteBuffer bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+    // Number of bytes already handed to the channel
+    private long written;
+
+    /**
+     * Create (or truncate) a file and prepare to write to it.
+     *
+     * @param filename File to write to
+     * @throws IOException if the file can not be opened
+     */
+    MapWriter(String filename) throws IOException {
+        channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    @Override
+    public MapWriter append(char c) throws IOException {
+        if (!chars.hasRemaining()) {
+            encodeChars(false);
+        }
+        chars.put(c);
+        return this;
+    }
+
+    @Override
+    public MapWriter append(CharSequence text) throws IOException {
+        if (text == null) {
+            text = "null";
+        }
+        return append(text, 0, text.length());
+    }
+
+    @Override
+    public MapWriter append(CharSequence text, int start, int end)
+            throws IOException {
+        if (text == null) {
+            text = "null";
+        }
+        for (int i = start; i < end; i++) {
+            if (!chars.hasRemaining()) {
+                encodeChars(false);
+            }
+            chars.put(text.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Number of bytes written so far (including buffered bytes), which
+     * {@link MapIndex.Builder MapIndex.Builder} records as line offsets.
+     * Only exact at character boundaries which do not split a surrogate
+     * pair (eg at the end of a line).
+     *
+     * @return byte offset of the next character in the file
+     * @throws IOException if writing fails
+     */
+    long position() throws IOException {
+        encodeChars(false);
+        return written + bytes.position();
+    }
+
+    /**
+     * Write an int as four big-endian bytes after any buffered characters.
+     *
+     * @param value Value to write
+     * @throws IOException if writing fails
+     */
+    void writeInt(int value) throws IOException {
+        reserve(4);
+        bytes.putInt(value);
+    }
+
+    /**
+     * Write a long as eight big-endian bytes after any buffered characters.
+     *
+     * @param value Value to write
+     * @throws IOException if writing fails
+     */
+    void writeLong(long value) throws IOException {
+        reserve(8);
+        bytes.putLong(value);
+    }
+
+    /**
+     * Write raw bytes after any buffered characters.
+     *
+     * @param raw Bytes to write
+     * @throws IOException if writing fails
+     */
+    void write(byte[] raw) throws IOException {
+        for (byte b : raw) {
+            reserve(1);
+            bytes.put(b);
+        }
+    }
+
+    /**
+     * Encode buffered characters and make room for raw bytes.
+     *
+     * @param size Number of bytes about to be put in the byte buffer
+     */
+    private void reserve(int size) throws IOException {
+        encodeChars(false);
+        if (bytes.remaining() < size) {
+            writeBytes();
+        }
+    }
+
+    /**
+     * Encode buffered characters into the byte buffer, writing to the
+     * channel whenever it fills.
+     *
+     * @param endOfInput true if no more characters will follow
+     */
+    private void encodeChars(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+                writeBytes();
+            } else {
+                break;
+            }
+        }
+        chars.compact();
+    }
+
+    /**
+     * Hand all buffered bytes to the channel.
+     */
+    private void writeBytes() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            written += channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    /**
+     * Flush everything buffered and close the file.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            encodeChars(true);
+            while (encoder.flush(bytes).isOverflow()) {
+                writeBytes();
+            }
+            writeBytes();
+        } finally {
+            channel.close();
+        }
+    }
+}
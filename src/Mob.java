@@ -1,5 +1,11 @@
 /**
  * Anything which can fight.
+ * <br />A Mob which is a {@link Thing Thing} must tell its listeners'
+ * {@link MapListener#healthChanged(Mob) healthChanged} whenever
+ * setAlive or takeDamage may have changed isAlive() (as
+ * {@link Critter Critter} and {@link Player Player} do). Rooms keep a list
+ * of the living Mobs in them for {@link Room#leave(Thing) leave}, and only
+ * update it when told.
  *
  * @author JF
  */
@@ -0,0 +1,174 @@
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Finds the {@link Room Room}s within a number of exits (the radius) of a
+ * start room, and how many exits away each one is.
+ * <br />The walk is breadth first and does not look at the exits of rooms
+ * at the radius, so its cost depends on the size of the neighbourhood and
+ * not on the size of the map. A walker is meant to be kept and used again
+ * (say on every move of the player): its buffers are kept between walks,
+ * and instead of clearing the table of rooms seen each walk uses a new
+ * stamp, so once the buffers have grown a walk creates no objects.
+ * <br />Results are kept until the next walk. A walker only keeps the
+ * rooms found by its last walk reachable, so a kept walker does not keep
+ * a dropped map alive. Not safe for use by several threads at once; the
+ * map must not change during a walk.
+ */
+public class NeighbourhoodWalker {
+
+    // Stamp of the walk which last reached each room in the high 32 bits,
+    // and its index in rooms in the low 32 bits (0 if never reached)
+    private final RoomLongTable reached = new RoomLongTable(0);
+    // Stamp of the current walk (never 0)
+    private int stamp;
+    // Rooms found by the last walk, in the order found (only the first
+    // count are used, the rest are null); also the queue of the walk
+    private Room[] rooms = new Room[16];
+    // Number of exits to each room in rooms
+    private int[] distances = new int[16];
+    // Number of rooms found
+    private int count;
+    // Distance of the exits being queued
+    private int nextDistance;
+    // Queues each exit of the room being expanded, unless already found
+    private final BiConsumer<String, Room> enqueue = (label, exit) -> {
+        if (!contains(exit)) {
+            add(exit, nextDistance);
+        }
+    };
+
+    /**
+     * Find the rooms within radius exits of start.
+     *
+     * @param start Room to begin from (distance 0)
+     * @param radius Most exits to follow
+     * @return number of rooms found (including start)
+     * @throws NullPointerException if start is null
+     * @throws IllegalArgumentException if radius is negative
+     */
+    public int walk(Room start, int radius) {
+        if (start == null) {
+            throw new NullPointerException();
+        }
+        if (radius < 0) {
+            throw new IllegalArgumentException("radius " + radius);
+        }
+        if (++stamp == Integer.MAX_VALUE) {
+            // stamps are about to repeat, so forget the old ones
+            reached.clear();
+            stamp = 1;
+        }
+        int previous = count;
+        count = 0;
+        add(start, 0);
+        for (int head = 0; head < count; head++) {
+            if (distances[head] == radius) {
+                // rooms are found in order of distance, so the rest are
+                // at the radius as well
+                break;
+            }
+            nextDistance = distances[head] + 1;
+            rooms[head].forEachExit(enqueue);
+        }
+        if (count < previous) {
+            // let go of the rooms found by the last walk but not this one
+            Arrays.fill(rooms, count, previous, null);
+        }
+        return count;
+    }
+
+    /**
+     * Find the rooms within radius exits of start and pass each one to
+     * visit with its distance, nearest first.
+     *
+     * @param start Room to begin from (distance 0)
+     * @param radius Most exits to follow
+     * @param visit Called with each room and its distance
+     * @throws NullPointerException if start is null
+     * @throws IllegalArgumentException if radius is negative
+     */
+    public void walk(Room start, int radius,
+            ObjIntConsumer<? super Room> visit) {
+        walk(start, radius);
+        for (int i = 0; i < count; i++) {
+            visit.accept(rooms[i], distances[i]);
+        }
+    }
+
+    /**
+     * @return number of rooms found by the last walk
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param index Index of a room, 0 to size() - 1 (nearest first)
+     * @return the room
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public Room getRoom(int index) {
+        check(index);
+        return rooms[index];
+    }
+
+    /**
+     * @param index Index of a room, 0 to size() - 1 (nearest first)
+     * @return number of exits from the start room to the room
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public int getDistance(int index) {
+        check(index);
+        return distances[index];
+    }
+
+    /**
+     * @param room Room to query (may be null)
+     * @return true if the last walk found room
+     */
+    public boolean contains(Room room) {
+        return (int) (reached.get(room) >>> 32) == stamp && stamp != 0;
+    }
+
+    /**
+     * @param room Room to query (may be null)
+     * @return number of exits from the start room to room, or -1 if the
+     *         last walk did not find it
+     */
+    public int distanceTo(Room room) {
+        long entry = reached.get(room);
+        if ((int) (entry >>> 32) != stamp || stamp == 0) {
+            return -1;
+        }
+        return distances[(int) entry];
+    }
+
+    /**
+     * Record a room as found.
+     *
+     * @param room Room found
+     * @param distance Exits from the start room
+     */
+    private void add(Room room, int distance) {
+        if (count == rooms.length) {
+            rooms = Arrays.copyOf(rooms, count * 2);
+            distances = Arrays.copyOf(distances, count * 2);
+        }
+        reached.put(room, ((long) stamp << 32) | count);
+        rooms[count] = room;
+        distances[count] = distance;
+        count++;
+    }
+
+    /**
+     * @param index Index to check against size()
+     */
+    private void check(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("index " + index
+                    + ", size " + count);
+        }
+    }
+}
@@ -0,0 +1,410 @@
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A map whose Rooms are read from a memory mapped file as they are needed.
+ * <br />Rooms are handed out as {@link PagedRoom PagedRoom}s. A PagedRoom
+ * always knows its description, but its exits and contents are only read
+ * the first time they are used. When that happens every room within the
+ * prefetch radius is loaded as well.
+ * <br />At most maxLoaded unchanged rooms are kept loaded. The least
+ * recently used ones are released once that limit is passed and are read
+ * again if they are used later. Rooms which have been changed are never
+ * released. A room also counts as changed once the health of a Mob read
+ * into it changes, so fights are never lost.
+ * <br />Exits may lead to ordinary Rooms; those are always in memory and
+ * are not prefetched through.
+ * <br />Note: Things in a released room are new objects when it is reloaded.
+ * A room whose items can no longer be decoded (because the file was
+ * changed after it was opened) throws IllegalStateException when used.
+ */
+public class PagedMap {
+
+    // Where each room's lines start
+    private final MapLayout layout;
+    // How many exits away from a used room to prefetch
+    private final int radius;
+    // Maximum number of unchanged rooms to keep loaded
+    private final int maxLoaded;
+
+    // Every room which may still be in use, so each id has one Room object
+    private final Map<Integer, RoomReference> rooms = new HashMap<>();
+    // Cleared references waiting to be removed from rooms
+    private final ReferenceQueue<PagedRoom> released = new ReferenceQueue<>();
+    // Loaded, unchanged rooms in least recently used order
+    private final LinkedHashMap<PagedRoom, Boolean> loaded =
+            new LinkedHashMap<>(16, 0.75f, true);
+    // Changed rooms (kept loaded permanently)
+    private final Map<PagedRoom, Boolean> changed = new IdentityHashMap<>();
+    // Rooms which must not be released during the current load
+    private final Map<PagedRoom, Boolean> pinned = new IdentityHashMap<>();
+    // Scanner used to read exits and contents
+    private final MapScanner in;
+    // Scanner used to read descriptions (while in is part way through a room)
+    private final MapScanner descriptions;
+
+    /**
+     * A weak reference which remembers the id of its room.
+     */
+    private static class RoomReference extends WeakReference<PagedRoom> {
+        // Id of the room referred to
+        private final int id;
+
+        RoomReference(PagedRoom room, ReferenceQueue<PagedRoom> queue) {
+            super(room, queue);
+            id = room.id;
+        }
+    }
+
+    /**
+     * @param buffer Buffer holding the file
+     * @param charset Charset the file was written in
+     * @param layout Layout of the file
+     * @param radius How many exits away from a used room to prefetch
+     * @param maxLoaded Maximum number of unchanged rooms to keep loaded
+     */
+    PagedMap(ByteBuffer buffer, Charset charset, MapLayout layout,
+            int radius, int maxLoaded) {
+        this.layout = layout;
+        this.radius = radius;
+        this.maxLoaded = maxLoaded;
+        in = new MapScanner(buffer, charset, 0);
+        descriptions = new MapScanner(buffer, charset, 0);
+    }
+
+    /**
+     * @return the start room of the map
+     */
+    public Room getStartRoom() {
+        return room(0);
+    }
+
+    /**
+     * Decode the player saved in the map (which is not added to a room).
+     *
+     * @return the player or null if the map does not contain one
+     */
+    Player readPlayer() {
+        if (layout.player < 0) {
+            return null;
+        }
+        in.seek(layout.player);
+        Thing thing = MapIO.decodeThing(in.readLine(), getStartRoom());
+        return (thing instanceof Player) ? (Player) thing : null;
+    }
+
+    /**
+     * @return number of rooms currently holding their exits and contents
+     */
+    public int loadedCount() {
+        return loaded.size() + changed.size();
+    }
+
+    /**
+     * Get the Room object for an id, creating it if needed.
+     *
+     * @param id room id in the file
+     * @return Room for that id
+     */
+    private PagedRoom room(int id) {
+        expungeReleased();
+        RoomReference reference = rooms.get(id);
+        PagedRoom room = (reference == null) ? null : reference.get();
+        if (room == null) {
+            descriptions.seek(layout.descriptions[id]);
+            room = new PagedRoom(this, id, descriptions.readLine());
+            rooms.put(id, new RoomReference(room, released));
+        }
+        return room;
+    }
+
+    /**
+     * Forget rooms which are no longer referenced.
+     */
+    private void expungeReleased() {
+        Reference<? extends PagedRoom> reference;
+        while ((reference = released.poll()) != null) {
+            int id = ((RoomReference) reference).id;
+            if (rooms.get(id) == reference) {
+                rooms.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Called before a room's exits or contents are used.
+     * Loads the room and its neighbourhood if needed.
+     *
+     * @param room Room about to be used
+     */
+    private void use(PagedRoom room) {
+        if (room.loaded) {
+            // refresh its position in the LRU order
+            loaded.get(room);
+            return;
+        }
+        prefetch(room);
+        releaseExcess();
+        pinned.clear();
+    }
+
+    /**
+     * Load every room within the prefetch radius of a room.
+     *
+     * @param centre Room to start from
+     */
+    private void prefetch(PagedRoom centre) {
+        Deque<PagedRoom> todo = new ArrayDeque<>();
+        Map<PagedRoom, Integer> distance = new IdentityHashMap<>();
+        todo.add(centre);
+        distance.put(centre, 0);
+        while (!todo.isEmpty()) {
+            PagedRoom room = todo.removeFirst();
+            if (!room.loaded) {
+                load(room);
+            }
+            pinned.put(room, Boolean.TRUE);
+            int next = distance.get(room) + 1;
+            if (next > radius) {
+                continue;
+            }
+            for (Room exit : room.loadedExits().values()) {
+                if (!(exit instanceof PagedRoom)
+                        || ((PagedRoom) exit).map != this) {
+                    // ordinary rooms linked in are already in memory
+                    continue;
+                }
+                PagedRoom target = (PagedRoom) exit;
+                if (!distance.containsKey(target)) {
+                    distance.put(target, next);
+                    todo.add(target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a room's exits and contents.
+     *
+     * @param room Room to load
+     * @throws IllegalStateException if an item can not be decoded
+     */
+    private void load(PagedRoom room) {
+        String[] label = new String[1];
+        in.seek(layout.exits[room.id]);
+        int exitcount = in.readIntLine();
+        for (int j = 0; j < exitcount; j++) {
+            int target = in.readExit(label);
+            room.attach(label[0], room(target));
+        }
+        in.seek(layout.contents[room.id]);
+        int itemcount = in.readIntLine();
+        for (int j = 0; j < itemcount; j++) {
+            String line = in.readLine();
+            Thing thing = MapIO.decodeThing(line, getStartRoom());
+            if (thing == null) {
+                throw new IllegalStateException("room " + room.id
+                        + ": can not decode item: " + line);
+            }
+            if (!(thing instanceof Player)) {
+                room.place(thing);
+            }
+        }
+        room.loaded = true;
+        loaded.put(room, Boolean.TRUE);
+    }
+
+    /**
+     * Release the least recently used unchanged rooms above the limit.
+     */
+    private void releaseExcess() {
+        Iterator<PagedRoom> oldest = loaded.keySet().iterator();
+        while (loaded.size() > maxLoaded && oldest.hasNext()) {
+            PagedRoom room = oldest.next();
+            if (pinned.containsKey(room)) {
+                continue;
+            }
+            oldest.remove();
+            room.release();
+        }
+    }
+
+    /**
+     * Called when a room is about to be changed, so it is never released.
+     *
+     * @param room Room being changed
+     */
+    private void change(PagedRoom room) {
+        use(room);
+        if (loaded.remove(room) != null) {
+            changed.put(room, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * A Room of a {@link PagedMap PagedMap}.
+     * Behaves exactly like a Room, loading itself when its exits or
+     * contents are first used.
+     *
+     * @serial exclude
+     */
+    static class PagedRoom extends Room {
+        // Written as a SerialRoomGraph; this only fixes the class version
+        private static final long serialVersionUID = 1L;
+        // Map this room belongs to
+        private final transient PagedMap map;
+        // Id of the room in the file
+        private final int id;
+        // Are the exits and contents in memory?
+        private transient boolean loaded;
+        // Marks the room changed when a Mob read into it changes health
+        // (created when first needed)
+        private transient MapListener healthWatcher;
+
+        PagedRoom(PagedMap map, int id, String description) {
+            super(description);
+            this.map = map;
+            this.id = id;
+        }
+
+        /**
+         * @return exits without triggering a load
+         */
+        private Map<String, Room> loadedExits() {
+            return super.getExits();
+        }
+
+        /**
+         * Add an exit while loading.
+         */
+        private void attach(String name, Room target) {
+            // the file is only checked as rooms are loaded, so a
+            // duplicate exit is skipped rather than failing the load
+            loadExit(name, target);
+        }
+
+        /**
+         * Add a Thing while loading.
+         */
+        private void place(Thing thing) {
+            loadThing(thing);
+            if (thing instanceof Mob) {
+                if (healthWatcher == null) {
+                    healthWatcher = new MapListener() {
+                        @Override
+                        public void healthChanged(Mob mob) {
+                            map.change(PagedRoom.this);
+                        }
+                    };
+                }
+                thing.addListener(healthWatcher);
+            }
+        }
+
+        /**
+         * Drop exits and contents so they can be garbage collected.
+         */
+        private void release() {
+            if (healthWatcher != null) {
+                for (Thing thing : super.getContents()) {
+                    thing.removeListener(healthWatcher);
+                }
+            }
+            loaded = false;
+            clear();
+        }
+
+        @Override
+        public Map<String, Room> getExits() {
+            map.use(this);
+            return super.getExits();
+        }
+
+        @Override
+        public Room getExit(Direction direction) {
+            map.use(this);
+            return super.getExit(direction);
+        }
+
+        @Override
+        public List<Thing> getContents() {
+            map.use(this);
+            return super.getContents();
+        }
+
+        @Override
+        public void forEachExit(
+                BiConsumer<? super String, ? super Room> action) {
+            map.use(this);
+            super.forEachExit(action);
+        }
+
+        @Override
+        public void forEachThing(Consumer<? super Thing> action) {
+            map.use(this);
+            super.forEachThing(action);
+        }
+
+        @Override
+        public int exitCount() {
+            map.use(this);
+            return super.exitCount();
+        }
+
+        @Override
+        public int contentCount() {
+            map.use(this);
+            return super.contentCount();
+        }
+
+        @Override
+        public void setDescription(String description) {
+            map.change(this);
+            super.setDescription(description);
+        }
+
+        @Override
+        public void addExit(String name, Room target)
+                throws ExitExistsException, NullRoomException {
+            map.change(this);
+            super.addExit(name, target);
+        }
+
+        @Override
+        public void removeExit(String name) {
+            map.change(this);
+            super.removeExit(name);
+        }
+
+        @Override
+        public void enter(Thing item) {
+            map.change(this);
+            super.enter(item);
+        }
+
+        @Override
+        public boolean leave(Thing item) {
+            map.change(this);
+            if (!super.leave(item)) {
+                return false;
+            }
+            if (healthWatcher != null) {
+                item.removeListener(healthWatcher);
+            }
+            return true;
+        }
+    }
+}
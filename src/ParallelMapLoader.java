@@ -0,0 +1,163 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads a map file written by {@link MapIO#saveMap(Room, String)} using
+ * several threads.
+ * <br />A sequential first pass ({@link MapLayout MapLayout}) only finds
+ * where each room's description, exit block and content block starts.
+ * Fork-join tasks then create the Rooms and, once every Room exists,
+ * attach exits and decode contents for ranges of rooms. Each task only
+ * modifies the rooms in its own range, and exits are added in file order,
+ * so the result does not depend on scheduling.
+ */
+class ParallelMapLoader {
+
+    // Rooms handled by a single task
+    private static final int ROOMS_PER_TASK = 2048;
+
+    // Buffer holding the file
+    private final ByteBuffer buffer;
+    // Charset the file was written in
+    private final Charset charset;
+    // Where each room's lines start
+    private MapLayout layout;
+    // The rooms being loaded
+    private Room[] rooms;
+
+    /**
+     * Thrown by tasks when the file is not a valid map.
+     */
+    private static class MalformedMapException extends RuntimeException {
+        // Caught within the load, never serialized
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * @param buffer Buffer holding a whole map file
+     * @param charset Charset the file was written in
+     */
+    ParallelMapLoader(ByteBuffer buffer, Charset charset) {
+        this.buffer = buffer;
+        this.charset = charset;
+    }
+
+    /**
+     * Load the map.
+     *
+     * @param pool Pool to run the tasks in
+     * @return same as {@link MapIO#loadMap(String) MapIO.loadMap}
+     */
+    Object[] load(ForkJoinPool pool) {
+        try {
+            layout = MapLayout.scan(buffer, charset);
+            if (layout == null) {
+                return null;
+            }
+            rooms = new Room[layout.size()];
+            pool.invoke(new CreateRooms(0, rooms.length));
+            Player player = pool.invoke(new FillRooms(0, rooms.length));
+            return new Object[]{player, rooms[0]};
+        } catch (MalformedMapException ex) {
+            return null;
+        } catch (IndexOutOfBoundsException ex) {
+            return null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the Rooms for a range of ids.
+     */
+    private class CreateRooms extends RecursiveAction {
+        // Tasks are never serialized; fixed to keep javac quiet
+        private static final long serialVersionUID = 1L;
+        // First room id (inclusive)
+        private final int from;
+        // Last room id (exclusive)
+        private final int to;
+
+        CreateRooms(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ROOMS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CreateRooms(from, middle),
+                        new CreateRooms(middle, to));
+                return;
+            }
+            MapScanner in = new MapScanner(buffer, charset, 0);
+            for (int i = from; i < to; i++) {
+                in.seek(layout.descriptions[i]);
+                rooms[i] = new Room(in.readLine());
+            }
+        }
+    }
+
+    /**
+     * Adds exits and contents to a range of rooms.
+     * Produces the last Player found in the range (or null).
+     */
+    private class FillRooms extends RecursiveTask<Player> {
+        // Tasks are never serialized; fixed to keep javac quiet
+        private static final long serialVersionUID = 1L;
+        // First room id (inclusive)
+        private final int from;
+        // Last room id (exclusive)
+        private final int to;
+
+        FillRooms(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Player compute() {
+            if (to - from > ROOMS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                FillRooms left = new FillRooms(from, middle);
+                FillRooms right = new FillRooms(middle, to);
+                left.fork();
+                Player later = right.compute();
+                Player earlier = left.join();
+                // the sequential loader keeps the last player it reads
+                return (later != null) ? later : earlier;
+            }
+            MapScanner in = new MapScanner(buffer, charset, 0);
+            String[] label = new String[1];
+            Player player = null;
+            for (int i = from; i < to; i++) {
+                in.seek(layout.exits[i]);
+                int exitcount = in.readIntLine();
+                for (int j = 0; j < exitcount; j++) {
+                    int target = in.readExit(label);
+                    if (!rooms[i].loadExit(label[0], rooms[target])) {
+                        throw new MalformedMapException();
+                    }
+                }
+                in.seek(layout.contents[i]);
+                int itemcount = in.readIntLine();
+                for (int j = 0; j < itemcount; j++) {
+                    Thing t = MapIO.decodeThing(in.readLine(), rooms[0]);
+                    if (t == null) {
+                        throw new MalformedMapException();
+                    }
+                    if (t instanceof Player) { // not added to rooms
+                        player = (Player) t;
+                    } else {
+                        rooms[i].loadThing(t);
+                    }
+                }
+            }
+            return player;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Visits every {@link Room Room} reachable from a start room, spreading
+ * the work over the threads of a fork-join pool.
+ * <br />The walk goes one breadth first level at a time: the rooms of a
+ * level (the frontier) are split into chunks which are expanded in
+ * parallel, each claiming the unseen rooms it finds in a shared set of
+ * seen rooms, and the rooms claimed make up the next level. Small levels
+ * are expanded by the calling thread.
+ * <br />Results can be gathered either through a visit callback, which is
+ * called from several threads at once and so must be thread-safe, or
+ * through accumulators: each chunk fills its own, and they are merged by
+ * the calling thread as each level ends.
+ * <br />In ordered mode the rooms come out in exactly the order
+ * {@link MapWalker MapWalker} visits them, and accumulators are merged in
+ * that order, so callers which need repeatable output (such as
+ * {@link MapIO#saveMap(Room, String) saveMap}) get the same result every
+ * time. Chunks then only collect candidates and the calling thread
+ * removes repeats from each level, which costs a little more.
+ * <br />Rooms are only read, so the map must not change during a walk.
+ * Rooms of a {@link PagedMap PagedMap} load themselves when used and must
+ * be walked with MapWalker instead.
+ */
+public class ParallelMapWalker {
+
+    // Levels with more rooms than this are split into chunks of this size
+    private static final int CHUNK = 1024;
+
+    // Room to begin exploring from
+    private final Room start;
+    // Pool which expands the chunks
+    private final ForkJoinPool pool;
+    // Should rooms come out in MapWalker order?
+    private final boolean ordered;
+    // Rooms seen by the last walk
+    private ConcurrentRoomSet visited = new ConcurrentRoomSet();
+
+    /**
+     * Walk with the common pool, in no particular order within each level.
+     *
+     * @param start Room to begin exploring from
+     * @throws NullPointerException if start is null
+     */
+    public ParallelMapWalker(Room start) {
+        this(start, ForkJoinPool.commonPool(), false);
+    }
+
+    /**
+     * @param start Room to begin exploring from
+     * @param pool Pool to expand levels with
+     * @param ordered true to produce rooms in MapWalker order
+     * @throws NullPointerException if start or pool is null
+     */
+    public ParallelMapWalker(Room start, ForkJoinPool pool, boolean ordered) {
+        if (start == null || pool == null) {
+            throw new NullPointerException();
+        }
+        this.start = start;
+        this.pool = pool;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Find every reachable room.
+     *
+     * @return the rooms, level by level (in MapWalker order if ordered)
+     */
+    public List<Room> walk() {
+        List<Room> rooms = new ArrayList<>();
+        run(() -> null, (none, room) -> { }, (a, b) -> null, rooms);
+        return rooms;
+    }
+
+    /**
+     * Call visit once for each reachable room.
+     * visit is called from several threads at once.
+     *
+     * @param visit Thread-safe action to take on each room
+     */
+    public void walk(Consumer<? super Room> visit) {
+        run(() -> visit, Consumer::accept, (a, b) -> a, null);
+    }
+
+    /**
+     * Gather a result from every reachable room. Each chunk of rooms is
+     * added to a new accumulator by one thread, and the accumulators are
+     * merged by the calling thread, so none of the functions need to be
+     * thread-safe (though supplier and accumulator are called from several
+     * threads).
+     *
+     * @param supplier Makes a new empty accumulator
+     * @param accumulator Adds a room to an accumulator
+     * @param combiner Merges the second accumulator into the first and
+     *                 returns the result
+     * @param <A> type of accumulator
+     * @return all the accumulators merged, starting from an empty one
+     */
+    public <A> A walk(Supplier<A> supplier,
+            BiConsumer<A, ? super Room> accumulator,
+            BinaryOperator<A> combiner) {
+        return run(supplier, accumulator, combiner, null);
+    }
+
+    /**
+     * @param room Room to query
+     * @return true if the last walk reached room
+     */
+    public boolean hasVisited(Room room) {
+        return visited.contains(room);
+    }
+
+    /**
+     * Walk level by level.
+     *
+     * @param rooms List to add each level to (may be null)
+     * @return all the accumulators merged in order
+     */
+    private <A> A run(Supplier<A> supplier,
+            BiConsumer<A, ? super Room> accumulator,
+            BinaryOperator<A> combiner, List<Room> rooms) {
+        visited = new ConcurrentRoomSet();
+        visited.add(start);
+        A result = supplier.get();
+        Room[] frontier = {start};
+        int size = 1;
+        while (size > 0) {
+            if (rooms != null) {
+                rooms.addAll(Arrays.asList(frontier).subList(0, size));
+            }
+            List<Chunk<A>> chunks = new ArrayList<>();
+            for (int from = 0; from < size; from += CHUNK) {
+                chunks.add(new Chunk<A>(frontier, from,
+                        Math.min(from + CHUNK, size), supplier, accumulator));
+            }
+            if (chunks.size() == 1) {
+                chunks.get(0).invoke();
+            } else {
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        ForkJoinTask.invokeAll(chunks);
+                    }
+                });
+            }
+            size = 0;
+            for (Chunk<A> chunk : chunks) {
+                result = combiner.apply(result, chunk.result);
+                size += chunk.count;
+            }
+            Room[] next = new Room[size];
+            size = 0;
+            for (Chunk<A> chunk : chunks) {
+                for (int i = 0; i < chunk.count; i++) {
+                    // in ordered mode the first chunk to list a room
+                    // is the one MapWalker would have found it from
+                    if (!ordered || visited.add(chunk.found[i])) {
+                        next[size++] = chunk.found[i];
+                    }
+                }
+            }
+            frontier = next;
+        }
+        return result;
+    }
+
+    /**
+     * Expands part of a level.
+     */
+    private final class Chunk<A> extends RecursiveAction
+            implements BiConsumer<String, Room> {
+        // Chunks are never serialized; fixed to keep javac quiet
+        private static final long serialVersionUID = 1L;
+        // Rooms of the level
+        private final Room[] frontier;
+        // First room of the chunk
+        private final int from;
+        // One more than the last room of the chunk
+        private final int to;
+        // Makes the chunk's accumulator
+        private final Supplier<A> supplier;
+        // Adds a room to the chunk's accumulator
+        private final BiConsumer<A, ? super Room> accumulator;
+        // Accumulator of the chunk (once expanded)
+        private A result;
+        // Rooms found for the next level (only the first count are used);
+        // in ordered mode these are candidates which may repeat
+        private Room[] found = new Room[16];
+        // Number of rooms found
+        private int count;
+
+        Chunk(Room[] frontier, int from, int to, Supplier<A> supplier,
+                BiConsumer<A, ? super Room> accumulator) {
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+        }
+
+        @Override
+        protected void compute() {
+            result = supplier.get();
+            for (int i = from; i < to; i++) {
+                frontier[i].forEachExit(this);
+                accumulator.accept(result, frontier[i]);
+            }
+        }
+
+        @Override
+        public void accept(String label, Room exit) {
+            if (ordered ? visited.contains(exit) : !visited.add(exit)) {
+                return;
+            }
+            if (count == found.length) {
+                found = Arrays.copyOf(found, count * 2);
+            }
+            found[count++] = exit;
+        }
+    }
+}
@@ -0,0 +1,679 @@
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Finds routes between {@link Room Room}s, as the exit labels to follow.
+ * <br />findPath uses A*, guided by the Manhattan distance between the
+ * coordinates {@link BoundsMapper BoundsMapper} gives the rooms, so on a
+ * map laid out as a grid it looks at little more than the rooms near the
+ * straight line between the two rooms. findPathBreadthFirst looks at every
+ * room closer than the target. Both find a shortest route as long as every
+ * exit moves one step in its direction; exits which jump further (or which
+ * are not one of the four directions) can make A* miss a shorter route,
+ * though the route it finds is still a real one.
+ * <br />Routes are kept in a least recently used cache, so many callers
+ * asking for the same route share one search. Like
+ * {@link DescriptionIndex DescriptionIndex} the finder listens to every
+ * room of the map, and keeps the cache and the coordinates up to date
+ * without starting again when an exit changes:
+ * <ul>
+ * <li>Removing an exit forgets just the cached routes which take it (each
+ * cache keeps the routes passing through each room).</li>
+ * <li>Adding an exit forgets the cached results saying there is no route,
+ * and the routes the new exit could make shorter: those where the
+ * distance between the coordinates of the start and the exit's room, plus
+ * one, plus that between the coordinates of the exit's target and the end
+ * is less than the length of the route. This bound only holds while every
+ * exit out of a room with coordinates moves one step in its direction;
+ * once one does not, adding an exit forgets every route.</li>
+ * <li>Rooms an added exit makes reachable from rooms with coordinates are
+ * given coordinates one step from the room they are reached from. Rooms
+ * keep their coordinates when exits are removed.</li>
+ * </ul>
+ * Rooms which are not reachable from the root are listened to once a
+ * route is asked for from them.
+ * <br />Not safe for use by several threads at once.
+ */
+public class PathFinder implements MapListener, Closeable {
+
+    /**
+     * A cached search result.
+     */
+    private static final class Route {
+        // Route key of the two rooms searched between
+        private final long key;
+        // Labels of the exits to follow (non-modifiable), or null if there
+        // is no route
+        private final List<String> labels;
+        // Rooms the route passes through, first to last (just the two
+        // rooms searched between if there is no route)
+        private final Room[] rooms;
+
+        Route(long key, List<String> labels, Room[] rooms) {
+            this.key = key;
+            this.labels = labels;
+            this.rooms = rooms;
+        }
+
+        /**
+         * @param room Room the exit is in
+         * @param label Name of the exit
+         * @return true if the route takes the exit
+         */
+        boolean takes(Room room, String label) {
+            for (int i = 0; i < rooms.length - 1; i++) {
+                if (rooms[i] == room && labels.get(i).equals(label)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Least recently used cache of the routes found by one kind of search,
+     * which also knows the routes passing through each room.
+     */
+    private final class RouteCache {
+        // Routes by route key, in least recently used order
+        private final LinkedHashMap<Long, Route> routes =
+                new LinkedHashMap<>(16, 0.75f, true);
+        // Routes (not results with no route) passing through each room
+        private final Map<Room, Set<Route>> through =
+                new IdentityHashMap<>();
+
+        /**
+         * @param key Route key
+         * @return the cached result or null if there is none
+         */
+        Route get(long key) {
+            return routes.get(key);
+        }
+
+        /**
+         * Cache a result, forgetting the least recently used if the cache
+         * is full.
+         *
+         * @param route Result to cache
+         */
+        void put(Route route) {
+            if (cacheSize == 0) {
+                return;
+            }
+            routes.put(route.key, route);
+            if (route.labels != null) {
+                for (Room room : route.rooms) {
+                    Set<Route> passing = through.get(room);
+                    if (passing == null) {
+                        passing = Collections.newSetFromMap(
+                                new IdentityHashMap<Route, Boolean>());
+                        through.put(room, passing);
+                    }
+                    passing.add(route);
+                }
+            }
+            if (routes.size() > cacheSize) {
+                Iterator<Route> eldest = routes.values().iterator();
+                Route dropped = eldest.next();
+                eldest.remove();
+                unlink(dropped, null);
+            }
+        }
+
+        /**
+         * Forget the routes which take an exit.
+         *
+         * @param room Room the exit is in
+         * @param label Name of the exit
+         */
+        void dropTaking(Room room, String label) {
+            Set<Route> passing = through.get(room);
+            if (passing == null) {
+                return;
+            }
+            for (Iterator<Route> i = passing.iterator(); i.hasNext();) {
+                Route route = i.next();
+                if (route.takes(room, label)) {
+                    i.remove();
+                    routes.remove(route.key);
+                    unlink(route, room);
+                }
+            }
+            if (passing.isEmpty()) {
+                through.remove(room);
+            }
+        }
+
+        /**
+         * Forget the results a new exit could change.
+         *
+         * @param room Room the exit is in
+         * @param target Room the exit goes to
+         */
+        void dropShortened(Room room, Room target) {
+            for (Iterator<Route> i = routes.values().iterator();
+                    i.hasNext();) {
+                Route route = i.next();
+                if (mayShorten(route, room, target)) {
+                    i.remove();
+                    unlink(route, null);
+                }
+            }
+        }
+
+        /**
+         * Forget every result.
+         */
+        void clear() {
+            routes.clear();
+            through.clear();
+        }
+
+        /**
+         * Take a forgotten route out of the rooms it passes through.
+         *
+         * @param route Route no longer cached
+         * @param skip Room not to look at (may be null)
+         */
+        private void unlink(Route route, Room skip) {
+            if (route.labels == null) {
+                return;
+            }
+            for (Room room : route.rooms) {
+                Set<Route> passing = (room == skip) ? null
+                        : through.get(room);
+                if (passing != null) {
+                    passing.remove(route);
+                    if (passing.isEmpty()) {
+                        through.remove(room);
+                    }
+                }
+            }
+        }
+    }
+
+    // Room coordinates are worked out from
+    private final Room root;
+    // Most routes to keep in each cache
+    private final int cacheSize;
+    // Routes found by A*
+    private final RouteCache aStarPaths = new RouteCache();
+    // Routes found breadth first
+    private final RouteCache breadthFirstPaths = new RouteCache();
+    // Rooms being listened to
+    private final RoomSet tracked = new RoomSet();
+    // The same rooms, so they can be stopped
+    private final List<Room> listened = new ArrayList<>();
+    // Coordinates of the rooms (null until needed)
+    private BoundsMapper coordinates;
+    // Does every exit out of a room with coordinates move one step in its
+    // direction? (only known once there are coordinates)
+    private boolean steps = true;
+
+    // Stamp of the search which last reached each room in the high 32
+    // bits, and its node number in the low 32 bits (0 if never reached)
+    private final RoomLongTable reached = new RoomLongTable(0);
+    // Stamp of the current search (never 0)
+    private int stamp;
+    // Room of each node of the search (only the first count are used)
+    private Room[] rooms = new Room[16];
+    // Node each node was reached from (-1 for the start)
+    private int[] parents = new int[16];
+    // Label of the exit each node was reached by
+    private String[] labels = new String[16];
+    // Exits followed to reach each node
+    private int[] costs = new int[16];
+    // Number of nodes
+    private int count;
+    // Nodes waiting to be expanded by A*, as a binary min-heap keyed on
+    // estimated total cost in the high 32 bits and Integer.MAX_VALUE less
+    // the cost so far in the low 32 (so ties go to the node furthest
+    // along, which keeps A* from spreading out across open ground)
+    private long[] open = new long[16];
+    // Node number of each entry of open
+    private int[] openNodes = new int[16];
+    // Number of entries in open
+    private int openSize;
+    // Is the current search A* (rather than breadth first)?
+    private boolean aStar;
+    // Node whose exits are being followed
+    private int current;
+    // Is the target room of the current search placed?
+    private boolean goalPlaced;
+    // Coordinates of the target room of the current search
+    private int goalX;
+    private int goalY;
+    // Follows each exit of the node being expanded
+    private final BiConsumer<String, Room> relax = this::relax;
+
+    /**
+     * Start listening to every room reachable from root.
+     *
+     * @param root Room to work out coordinates from (at 0, 0)
+     * @param cacheSize Most routes to remember for each kind of search
+     * @throws NullPointerException if root is null
+     * @throws IllegalArgumentException if cacheSize is negative
+     */
+    public PathFinder(Room root, int cacheSize) {
+        if (root == null) {
+            throw new NullPointerException();
+        }
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("cacheSize " + cacheSize);
+        }
+        this.root = root;
+        this.cacheSize = cacheSize;
+        track(root);
+    }
+
+    /**
+     * Find a route using A*.
+     *
+     * @param from Room to start in
+     * @param to Room to get to
+     * @return non-modifiable list of the exit labels to follow (empty if
+     *         from is to), or null if to can not be reached from from
+     * @throws NullPointerException if either room is null
+     */
+    public List<String> findPath(Room from, Room to) {
+        return route(from, to, true, aStarPaths);
+    }
+
+    /**
+     * Find a route with the fewest exits using a breadth first search.
+     *
+     * @param from Room to start in
+     * @param to Room to get to
+     * @return non-modifiable list of the exit labels to follow (empty if
+     *         from is to), or null if to can not be reached from from
+     * @throws NullPointerException if either room is null
+     */
+    public List<String> findPathBreadthFirst(Room from, Room to) {
+        return route(from, to, false, breadthFirstPaths);
+    }
+
+    /**
+     * Stop listening to the map. Cached routes are still given out.
+     */
+    @Override
+    public void close() {
+        for (Room room : listened) {
+            room.removeListener(this);
+        }
+    }
+
+    @Override
+    public void exitAdded(Room room, String label, Room target) {
+        track(target);
+        if (coordinates != null) {
+            follow(room, label, target);
+        }
+        if (aStarPaths.routes.isEmpty()
+                && breadthFirstPaths.routes.isEmpty()) {
+            return;
+        }
+        coordinates();
+        if (!steps) {
+            // distances between coordinates say nothing about routes
+            aStarPaths.clear();
+            breadthFirstPaths.clear();
+            return;
+        }
+        aStarPaths.dropShortened(room, target);
+        breadthFirstPaths.dropShortened(room, target);
+    }
+
+    @Override
+    public void exitRemoved(Room room, String label) {
+        aStarPaths.dropTaking(room, label);
+        breadthFirstPaths.dropTaking(room, label);
+    }
+
+    /**
+     * Look a route up in a cache, searching for it if it is not there.
+     *
+     * @param from Room to start in
+     * @param to Room to get to
+     * @param useAStar true for A*, false for breadth first
+     * @param cache Cache of routes from that kind of search
+     * @return the route or null if there is none
+     */
+    private List<String> route(Room from, Room to, boolean useAStar,
+            RouteCache cache) {
+        long key = ((long) from.getId() << 32) | to.getId();
+        Route route = cache.get(key);
+        if (route == null) {
+            if (!tracked.contains(from)) {
+                track(from);
+            }
+            int end = useAStar ? aStar(from, to) : breadthFirst(from, to);
+            route = (end < 0) ? new Route(key, null, new Room[] {from, to})
+                    : route(key, end);
+            cache.put(route);
+        }
+        return route.labels;
+    }
+
+    /**
+     * @return node of to, or -1 if there is no route
+     */
+    private int breadthFirst(Room from, Room to) {
+        start(from, false);
+        for (int head = 0; head < count; head++) {
+            if (rooms[head] == to) {
+                return head;
+            }
+            current = head;
+            rooms[head].forEachExit(relax);
+        }
+        return -1;
+    }
+
+    /**
+     * @return node of to, or -1 if there is no route
+     */
+    private int aStar(Room from, Room to) {
+        coordinates();
+        goalPlaced = coordinates.coords.containsKey(to);
+        if (goalPlaced) {
+            goalX = coordinates.getX(to);
+            goalY = coordinates.getY(to);
+        }
+        start(from, true);
+        push(heuristic(from), 0);
+        while (openSize > 0) {
+            int node = openNodes[0];
+            int cost = Integer.MAX_VALUE - (int) pop();
+            if (cost != costs[node]) {
+                // the node has been reached more cheaply since
+                continue;
+            }
+            if (rooms[node] == to) {
+                return node;
+            }
+            current = node;
+            rooms[node].forEachExit(relax);
+        }
+        return -1;
+    }
+
+    /**
+     * Begin a search with no nodes but the start.
+     *
+     * @param from Room to start in
+     * @param useAStar Is this an A* search?
+     */
+    private void start(Room from, boolean useAStar) {
+        if (++stamp == Integer.MAX_VALUE) {
+            // stamps are about to repeat, so forget the old ones
+            reached.clear();
+            stamp = 1;
+        }
+        aStar = useAStar;
+        count = 0;
+        openSize = 0;
+        add(from, -1, null, 0);
+    }
+
+    /**
+     * Follow an exit of the current node, recording the room it leads to
+     * if this is the cheapest way there found so far.
+     *
+     * @param label Name of the exit
+     * @param exit Room the exit goes to
+     */
+    private void relax(String label, Room exit) {
+        int cost = costs[current] + 1;
+        long entry = reached.get(exit);
+        int node;
+        if ((int) (entry >>> 32) == stamp) {
+            node = (int) entry;
+            if (cost >= costs[node]) {
+                return;
+            }
+            parents[node] = current;
+            labels[node] = label;
+            costs[node] = cost;
+        } else {
+            node = add(exit, current, label, cost);
+        }
+        if (aStar) {
+            push(cost + heuristic(exit), node);
+        }
+    }
+
+    /**
+     * @param room Room to estimate from
+     * @return Manhattan distance from room to the target, or 0 if either
+     *         has no coordinates
+     */
+    private int heuristic(Room room) {
+        if (!goalPlaced || !coordinates.coords.containsKey(room)) {
+            return 0;
+        }
+        return Math.abs(coordinates.getX(room) - goalX)
+                + Math.abs(coordinates.getY(room) - goalY);
+    }
+
+    /**
+     * Add a node to the search.
+     *
+     * @return number of the new node
+     */
+    private int add(Room room, int parent, String label, int cost) {
+        if (count == rooms.length) {
+            rooms = Arrays.copyOf(rooms, count * 2);
+            parents = Arrays.copyOf(parents, count * 2);
+            labels = Arrays.copyOf(labels, count * 2);
+            costs = Arrays.copyOf(costs, count * 2);
+        }
+        reached.put(room, ((long) stamp << 32) | count);
+        rooms[count] = room;
+        parents[count] = parent;
+        labels[count] = label;
+        costs[count] = cost;
+        return count++;
+    }
+
+    /**
+     * @param key Route key
+     * @param node Node the search ended at
+     * @return the route from the start to node
+     */
+    private Route route(long key, int node) {
+        String[] path = new String[costs[node]];
+        Room[] through = new Room[costs[node] + 1];
+        int n = node;
+        for (int i = path.length; i > 0; i--) {
+            path[i - 1] = labels[n];
+            through[i] = rooms[n];
+            n = parents[n];
+        }
+        through[0] = rooms[n];
+        return new Route(key,
+                Collections.unmodifiableList(Arrays.asList(path)), through);
+    }
+
+    /**
+     * Add a node to open at its current cost.
+     *
+     * @param estimate Estimated cost of a route through the node
+     * @param node Node number
+     */
+    private void push(int estimate, int node) {
+        if (openSize == open.length) {
+            open = Arrays.copyOf(open, openSize * 2);
+            openNodes = Arrays.copyOf(openNodes, openSize * 2);
+        }
+        long key = ((long) estimate << 32) | (Integer.MAX_VALUE - costs[node]);
+        int i = openSize++;
+        while (i > 0 && open[(i - 1) / 2] > key) {
+            open[i] = open[(i - 1) / 2];
+            openNodes[i] = openNodes[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        open[i] = key;
+        openNodes[i] = node;
+    }
+
+    /**
+     * Remove the smallest entry of open.
+     *
+     * @return its key
+     */
+    private long pop() {
+        long top = open[0];
+        long last = open[--openSize];
+        int lastNode = openNodes[openSize];
+        int i = 0;
+        while (2 * i + 1 < openSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < openSize && open[child + 1] < open[child]) {
+                child++;
+            }
+            if (open[child] >= last) {
+                break;
+            }
+            open[i] = open[child];
+            openNodes[i] = openNodes[child];
+            i = child;
+        }
+        open[i] = last;
+        openNodes[i] = lastNode;
+        return top;
+    }
+
+    /**
+     * @return the coordinates of the rooms, worked out if not yet needed
+     */
+    private BoundsMapper coordinates() {
+        if (coordinates == null) {
+            coordinates = new BoundsMapper(root);
+            coordinates.walk();
+            List<Room> placed = new ArrayList<>();
+            for (int i = 0; i < coordinates.roomCount(); i++) {
+                Room room = coordinates.getRoom(i);
+                room.forEachExit((label, exit) ->
+                        step(room, label, exit, placed));
+            }
+        }
+        return coordinates;
+    }
+
+    /**
+     * Keep the coordinates up to date with a new exit.
+     *
+     * @param room Room the exit is in
+     * @param label Name of the exit
+     * @param exit Room the exit goes to
+     */
+    private void follow(Room room, String label, Room exit) {
+        List<Room> placed = new ArrayList<>();
+        step(room, label, exit, placed);
+        while (!placed.isEmpty()) {
+            Room next = placed.remove(placed.size() - 1);
+            next.forEachExit((nextLabel, nextExit) ->
+                    step(next, nextLabel, nextExit, placed));
+        }
+    }
+
+    /**
+     * Check an exit out of a room with coordinates moves one step in its
+     * direction, giving the room it goes to coordinates if it has none.
+     *
+     * @param room Room the exit is in (nothing is done if it has no
+     *        coordinates)
+     * @param label Name of the exit
+     * @param exit Room the exit goes to
+     * @param placed Rooms given coordinates, whose exits are still to be
+     *        looked at
+     */
+    private void step(Room room, String label, Room exit, List<Room> placed) {
+        if (!coordinates.coords.containsKey(room)) {
+            return;
+        }
+        Direction direction = Direction.fromLabel(label);
+        if (direction == null) {
+            steps = false;
+            return;
+        }
+        int x = coordinates.getX(room) + direction.dx();
+        int y = coordinates.getY(room) + direction.dy();
+        if (coordinates.place(exit, x, y)) {
+            placed.add(exit);
+        } else if (coordinates.getX(exit) != x
+                || coordinates.getY(exit) != y) {
+            steps = false;
+        }
+    }
+
+    /**
+     * Could a new exit make a cached result wrong? While every exit out of
+     * a room with coordinates moves one step, a route from such a room
+     * only passes through rooms with coordinates, and its part before (or
+     * after) the exit is at least as long as the distance between the
+     * coordinates at either end of that part.
+     *
+     * @param route Cached result
+     * @param room Room the exit is in
+     * @param target Room the exit goes to
+     * @return true unless the route is known to stay as short as any
+     */
+    private boolean mayShorten(Route route, Room room, Room target) {
+        if (route.labels == null) {
+            return true;
+        }
+        Room from = route.rooms[0];
+        if (!coordinates.coords.containsKey(from)) {
+            return true;
+        }
+        if (!coordinates.coords.containsKey(room)) {
+            // from can not reach room
+            return false;
+        }
+        Room to = route.rooms[route.rooms.length - 1];
+        return distance(from, room) + 1 + distance(target, to)
+                < route.labels.size();
+    }
+
+    /**
+     * @return Manhattan distance between the coordinates of two rooms
+     */
+    private int distance(Room a, Room b) {
+        return Math.abs(coordinates.getX(a) - coordinates.getX(b))
+                + Math.abs(coordinates.getY(a) - coordinates.getY(b));
+    }
+
+    /**
+     * Listen to a room and every room reachable from it which is not
+     * yet being listened to.
+     *
+     * @param start Room to start from
+     */
+    private void track(Room start) {
+        List<Room> todo = new ArrayList<>();
+        todo.add(start);
+        while (!todo.isEmpty()) {
+            Room room = todo.remove(todo.size() - 1);
+            if (!tracked.add(room)) {
+                continue;
+            }
+            room.addListener(this);
+            listened.add(room);
+            room.forEachExit((label, exit) -> {
+                if (!tracked.contains(exit)) {
+                    todo.add(exit);
+                }
+            });
+        }
+    }
+}
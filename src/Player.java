@@ -16,6 +16,12 @@ public abstract class Player extends Thing implements Mob {
     private static final int MAX_HEALTH = 10;
     // Our inventory
     private List<Thing> contents;
+    // Non-modifiable view of contents (created when first needed)
+    private transient List<Thing> contentsView;
+    // Number of changes to health and inventory (wraps around)
+    private transient int generation;
+    // Has health or inventory changed since markClean() was last called?
+    private transient boolean dirty;
 
     /**
      * A player with default health.
@@ -45,6 +51,7 @@ public abstract class Player extends Thing implements Mob {
     @Override
     public void takeDamage(int amount) {
         health -= amount;
+        healthChanged();
     }
 
     @Override
@@ -80,6 +87,51 @@ public abstract class Player extends Thing implements Mob {
     @Override
     public void setAlive(boolean alive) {
         health = (alive ? MAX_HEALTH : 0);
+        healthChanged();
+    }
+
+    /*
+     * Tell listeners that health has changed
+     */
+    private void healthChanged() {
+        markDirty();
+        for (MapListener listener : getListeners()) {
+            listener.healthChanged(this);
+        }
+    }
+
+    /**
+     * Count of changes to this Player's health and inventory, see
+     * {@link Room#getGeneration() Room.getGeneration}.
+     *
+     * @return generation of this Player
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Has health or inventory changed since markClean() was last called?
+     *
+     * @return true if the Player has changed
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Clear the dirty flag.
+     */
+    public void markClean() {
+        dirty = false;
+    }
+
+    /**
+     * Record a change, as if health or inventory had changed.
+     */
+    public void markDirty() {
+        generation++;
+        dirty = true;
     }
 
     /**
@@ -89,6 +141,10 @@ public abstract class Player extends Thing implements Mob {
      */
     public void add(Thing thing) {
         contents.add(thing);
+        markDirty();
+        for (MapListener listener : getListeners()) {
+            listener.inventoryAdded(this, thing);
+        }
     }
 
     /**
@@ -97,7 +153,10 @@ public abstract class Player extends Thing implements Mob {
      * @return Things in the inventory
      */
     public List<Thing> getContents() {
-        return Collections.unmodifiableList(this.contents);
+        if (contentsView == null) {
+            contentsView = Collections.unmodifiableList(this.contents);
+        }
+        return contentsView;
     }
 
     /**
@@ -106,7 +165,9 @@ public abstract class Player extends Thing implements Mob {
      * @param thing Thing to remove
      */
     public void drop(Thing thing) {
-        contents.remove(thing); // silently fails if not there
+        if (contents.remove(thing)) { // silently fails if not there
+            dropped(thing);
+        }
     }
 
     /**
@@ -124,8 +185,20 @@ public abstract class Player extends Thing implements Mob {
             index++;
         }
         if (index < contents.size()) {
-            return contents.remove(index);
+            Thing thing = contents.remove(index);
+            dropped(thing);
+            return thing;
         }
         return null;
     }
+
+    /*
+     * Tell listeners that thing has left the inventory
+     */
+    private void dropped(Thing thing) {
+        markDirty();
+        for (MapListener listener : getListeners()) {
+            listener.inventoryDropped(this, thing);
+        }
+    }
 }
@@ -1,9 +1,11 @@
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * Building block for the map. Contains {@link Thing Thing}s Note: all exit labels are case sensitive.
@@ -16,9 +18,27 @@ public class Room implements Serializable {
     // Description for this Room
     private String description;
     // Exits from this Room. Strings are names of the exits
-    private Map<String, Room> exits;
-    // Things in this Room
-    private List<Thing> contents;
+    private ExitMap exits;
+    // Things in this Room, in the order they entered
+    private ContentsList contents;
+    // Non-modifiable view of contents (created when first needed)
+    private transient List<Thing> contentsView;
+    // Living Mobs in this Room (null until a Mob first tries to leave)
+    private transient LivingMobs livingMobs;
+    // Keeps livingMobs up to date as Mobs here lose or regain health
+    private transient MapListener mobWatcher;
+    // Listeners told about changes to this Room (created when first needed)
+    private transient List<MapListener> listeners;
+    // Block of ids this Room's id came from, kept reachable so that the
+    // id is not handed out again while this Room is alive
+    private final transient RoomIds.Block idBlock = RoomIds.block();
+    // Dense id from RoomIds (Rooms are always written through
+    // writeReplace, so a read Room is a new Room with a new id)
+    private final transient int id = idBlock.take();
+    // Number of changes made to this Room (wraps around)
+    private transient int generation;
+    // Has this Room changed since markClean() was last called?
+    private transient boolean dirty;
 
     /*
      * Replace characters in description strings
@@ -36,8 +56,69 @@ public class Room implements Serializable {
      */
     public Room(String description) {
         replaceDescription(description);
-        exits = new TreeMap<String, Room>();
-        contents = new LinkedList<Thing>();
+        exits = new ExitMap();
+        contents = new ContentsList();
+    }
+
+    /**
+     * A small number identifying this Room, for tables indexed by Room.
+     * Ids start at 0 and no two live Rooms share one, but once a Room
+     * has been garbage collected its id may be given to a new Room. Ids
+     * are not saved with a map.
+     *
+     * @return id of this Room
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Count of changes to this Room: it goes up whenever the description,
+     * exits or contents change (or markDirty() is called), but not while
+     * a map is being loaded, so a freshly loaded Room is at generation 0
+     * and clean. A consumer which remembers the generation it last saw can
+     * tell whether it needs to look at the Room again.
+     *
+     * @return generation of this Room
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Has this Room changed since markClean() was last called?
+     * Unlike the generation there is only one flag, so this suits a
+     * single consumer.
+     *
+     * @return true if the Room has changed
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Clear the dirty flag.
+     */
+    public void markClean() {
+        dirty = false;
+    }
+
+    /**
+     * Record a change the Room can not see for itself, such as the health
+     * of a Mob in it, as if the Room had changed.
+     */
+    public void markDirty() {
+        changed();
+    }
+
+    /**
+     * Record a change made by this Room. Unlike markDirty() this can not
+     * be overridden, so a subclass which locks in markDirty() is not
+     * locked again from inside its own methods.
+     */
+    private void changed() {
+        generation++;
+        dirty = true;
     }
 
     /**
@@ -57,15 +138,32 @@ public class Room implements Serializable {
      */
     public void setDescription(String description) {
         replaceDescription(description);
+        changed();
+        if (listeners != null) {
+            for (MapListener listener : listeners()) {
+                listener.descriptionChanged(this);
+            }
+        }
     }
 
     /**
      * What exits are there from this Room?
      *
-     * @return Non-modifiable map of names to Rooms
+     * @return Non-modifiable map of names to Rooms, sorted by name
      */
     public Map<String, Room> getExits() {
-        return Collections.unmodifiableMap(this.exits);
+        return exits;
+    }
+
+    /**
+     * Where does the exit in a direction go?
+     * Same as getExits().get(direction.label()) without comparing labels.
+     *
+     * @param direction Direction of the exit
+     * @return Room that way or null if there is no exit that way
+     */
+    public Room getExit(Direction direction) {
+        return exits.get(direction);
     }
 
     /**
@@ -74,7 +172,46 @@ public class Room implements Serializable {
      * @return Non-modifiable List of Things in the Room
      */
     public List<Thing> getContents() {
-        return Collections.unmodifiableList(this.contents);
+        if (contentsView == null) {
+            contentsView = Collections.unmodifiableList(this.contents);
+        }
+        return contentsView;
+    }
+
+    /**
+     * Pass each exit to action, in the same order as getExits().
+     * Unlike iterating over getExits() this creates no objects (unless
+     * the Room has exits which are not a {@link Direction Direction}).
+     *
+     * @param action Called with the name and target of each exit
+     */
+    public void forEachExit(BiConsumer<? super String, ? super Room> action) {
+        exits.forEach(action);
+    }
+
+    /**
+     * Pass each Thing in the Room to action, in the same order as
+     * getContents(), without creating an iterator.
+     * action must not make Things enter or leave this Room.
+     *
+     * @param action Called with each Thing
+     */
+    public void forEachThing(Consumer<? super Thing> action) {
+        contents.forEach(action);
+    }
+
+    /**
+     * @return number of exits, same as getExits().size()
+     */
+    public int exitCount() {
+        return exits.size();
+    }
+
+    /**
+     * @return number of Things in the Room, same as getContents().size()
+     */
+    public int contentCount() {
+        return contents.size();
     }
 
     /**
@@ -93,7 +230,13 @@ public class Room implements Serializable {
         if (target == null) {
             throw new NullRoomException();
         }
-        exits.put(name, target);
+        exits.addExit(name, target);
+        changed();
+        if (listeners != null) {
+            for (MapListener listener : listeners()) {
+                listener.exitAdded(this, name, target);
+            }
+        }
     }
 
     /**
@@ -103,7 +246,15 @@ public class Room implements Serializable {
      * @param name Name of exit to remove
      */
     public void removeExit(String name) {
-        exits.remove(name);
+        if (exits.removeExit(name) == null) {
+            return;
+        }
+        changed();
+        if (listeners != null) {
+            for (MapListener listener : listeners()) {
+                listener.exitRemoved(this, name);
+            }
+        }
     }
 
     /**
@@ -114,12 +265,21 @@ public class Room implements Serializable {
     public void enter(Thing item) {
         if (!contents.contains(item)) {
             contents.add(item);
+            if (livingMobs != null && item instanceof Mob) {
+                watch(item);
+            }
+            changed();
+            if (listeners != null) {
+                for (MapListener listener : listeners()) {
+                    listener.thingEntered(this, item);
+                }
+            }
         }
     }
 
     /**
      * Remove item from Room. Note: will fail if item is not in the Room or if
-     * something wants to fight item.
+     * something alive wants to fight item.
      *
      * @param item Thing to remove
      * @return true if removal was successful
@@ -128,26 +288,205 @@ public class Room implements Serializable {
         if (!contents.contains(item)) {
             return false;
         }
-        boolean trap = false;
         if (item instanceof Mob) {
-            for (Thing i : contents) {
-                if ((i instanceof Mob) && (i != item)) {
-                    if (((Mob) i).wantsToFight((Mob) item)) {
-                        trap = true;
-                        break;
-                    }
+            if (livingMobs == null) {
+                indexMobs();
+            }
+            for (int i = 0; i < livingMobs.size(); i++) {
+                Mob other = livingMobs.get(i);
+                if (other != item && other.wantsToFight((Mob) item)) {
+                    return false;
+                }
+            }
+            item.removeListener(mobWatcher);
+            // the node, and the position it holds, goes with the item
+            int position = contents.livingPosition(item);
+            if (position >= 0) {
+                unlist(position);
+            }
+        }
+        contents.remove(item);
+        changed();
+        if (listeners != null) {
+            for (MapListener listener : listeners()) {
+                listener.thingLeft(this, item);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove all exits and contents without any checks.
+     * Used by {@link PagedMap PagedMap} to release rooms it can reload.
+     * Listeners are not told.
+     */
+    void clear() {
+        if (livingMobs != null) {
+            for (Thing item : contents) {
+                if (item instanceof Mob) {
+                    item.removeListener(mobWatcher);
                 }
             }
+            livingMobs = null;
         }
-        if (trap) {
+        exits.clearExits();
+        contents.clear();
+    }
+
+    /**
+     * Set the description read from a file. Unlike setDescription this is
+     * not a change: the generation and dirty flag stay as they are and
+     * listeners are not told.
+     *
+     * @param description Description for the room
+     */
+    void loadDescription(String description) {
+        replaceDescription(description);
+    }
+
+    /**
+     * Add an exit read from a file. Unlike addExit this is not a change:
+     * the generation and dirty flag stay as they are and listeners are
+     * not told.
+     *
+     * @param name Name of the exit
+     * @param target Room the exit goes to
+     * @return false (and nothing is added) if there already is an exit
+     *         called name or target is null
+     */
+    boolean loadExit(String name, Room target) {
+        if (target == null || exits.containsKey(name)) {
             return false;
         }
-        contents.remove(item);
+        exits.addExit(name, target);
         return true;
     }
 
+    /**
+     * Add a Thing read from a file without any checks. Unlike enter this
+     * is not a change: the generation and dirty flag stay as they are and
+     * listeners are not told.
+     *
+     * @param item Thing to add
+     */
+    void loadThing(Thing item) {
+        contents.add(item);
+        if (livingMobs != null && item instanceof Mob) {
+            watch(item);
+        }
+    }
+
+    /**
+     * Start keeping track of the living Mobs in this Room.
+     * Only done once a Mob tries to leave, so Rooms which never need the
+     * trap check do not listen to anything.
+     */
+    private void indexMobs() {
+        livingMobs = new LivingMobs();
+        mobWatcher = new MapListener() {
+            @Override
+            public void healthChanged(Mob mob) {
+                mobHealthChanged(mob);
+            }
+        };
+        for (Thing item : contents) {
+            if (item instanceof Mob) {
+                watch(item);
+            }
+        }
+    }
+
+    /**
+     * Move a Mob in this Room into or out of the living Mobs.
+     *
+     * @param mob Mob whose health changed
+     */
+    void mobHealthChanged(Mob mob) {
+        changed();
+        Thing item = (Thing) mob;
+        int position = contents.livingPosition(item);
+        if (mob.isAlive() && position < 0) {
+            contents.setLivingPosition(item, livingMobs.add(mob));
+        } else if (!mob.isAlive() && position >= 0) {
+            unlist(position);
+            contents.setLivingPosition(item, -1);
+        }
+    }
+
+    /**
+     * Follow the health of a Mob which has entered.
+     *
+     * @param mob Mob to follow
+     */
+    private void watch(Thing mob) {
+        mob.addListener(mobWatcher);
+        if (((Mob) mob).isAlive()) {
+            contents.setLivingPosition(mob, livingMobs.add((Mob) mob));
+        }
+    }
+
+    /**
+     * Take a Mob out of the living Mobs. The caller clears the position
+     * recorded for it.
+     *
+     * @param position Position of the Mob in livingMobs
+     */
+    private void unlist(int position) {
+        Mob moved = livingMobs.removeAt(position);
+        if (moved != null) {
+            contents.setLivingPosition((Thing) moved, position);
+        }
+    }
+
+    /**
+     * Be told about future changes to this Room.
+     * Note: listeners are not serialized.
+     *
+     * @param listener Listener to add
+     */
+    public void addListener(MapListener listener) {
+        if (listeners == null) {
+            listeners = new ArrayList<MapListener>();
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Stop telling a listener about changes to this Room.
+     *
+     * @param listener Listener to remove
+     */
+    public void removeListener(MapListener listener) {
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * @return copy of the listeners, so they may add or remove listeners
+     *         while being told about a change
+     */
+    private MapListener[] listeners() {
+        return listeners.toArray(new MapListener[listeners.size()]);
+    }
+
+    /**
+     * Serialize the whole map reachable from this Room without recursing
+     * through exits.
+     *
+     * @return replacement object to serialize
+     * @throws ObjectStreamException never
+     * @see SerialRoomGraph
+     */
+    protected Object writeReplace() throws ObjectStreamException {
+        return new SerialRoomGraph(this);
+    }
+
     /** Connects two rooms both ways.
     * Note: either both exits are created or neither are.  
+    * Both rooms are locked (lowest id first) while the exits are added,
+    *     so for {@link SharedRoom SharedRoom}s no other thread sees
+    *     one exit without the other.
     * @param room1 First room 
     * @param room2 Second room
     * @param label1 Name of exit which goes from room1 to room2
@@ -165,12 +504,19 @@ public class Room implements Serializable {
         if ((label1 == null) || (label2 == null)) {
             throw new NullPointerException();
         }
-        room1.addExit(label1, room2); // any exception here will throw out
-        try {
-            room2.addExit(label2, room1);
-        } catch (ExitExistsException e) {
-            room1.removeExit(label1);
-            throw e;
+        Room first = (room1.getId() <= room2.getId()) ? room1 : room2;
+        Room second = (first == room1) ? room2 : room1;
+        synchronized (first) {
+            synchronized (second) {
+                // any exception here will throw out
+                room1.addExit(label1, room2);
+                try {
+                    room2.addExit(label2, room1);
+                } catch (ExitExistsException e) {
+                    room1.removeExit(label1);
+                    throw e;
+                }
+            }
         }
     }
 }
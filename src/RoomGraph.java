@@ -0,0 +1,291 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable snapshot of the {@link Room Room}s reachable from a start
+ * room, stored in compressed sparse row form.
+ * <br />Rooms are numbered 0 to roomCount() - 1 in the order
+ * {@link MapIO#saveMap(Room, String) saveMap} writes them, so room 0 is
+ * the start room and numbers match the ids in a saved map. The exits of
+ * room r are numbered exitStart(r) to exitEnd(r) - 1, in label order
+ * like {@link Room#getExits() getExits()}; each has a target room and a
+ * label id into a table of the distinct labels. Descriptions are kept,
+ * contents are not.
+ * <br />Nothing can be changed once built, so a snapshot can be shared
+ * between threads and walked without touching the Rooms it came from.
+ */
+public final class RoomGraph {
+
+    // Description of each room
+    private final String[] descriptions;
+    // Exits of room r are offsets[r] to offsets[r + 1] - 1
+    private final int[] offsets;
+    // Room each exit goes to
+    private final int[] targets;
+    // Label id of each exit
+    private final int[] labels;
+    // Distinct exit labels, indexed by label id
+    private final String[] labelNames;
+
+    private RoomGraph(String[] descriptions, int[] offsets, int[] targets,
+            int[] labels, String[] labelNames) {
+        this.descriptions = descriptions;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.labels = labels;
+        this.labelNames = labelNames;
+    }
+
+    /**
+     * Take a snapshot of every Room reachable from start.
+     *
+     * @param start Room to begin from (will be room 0)
+     * @return the snapshot
+     * @throws NullPointerException if start is null
+     */
+    public static RoomGraph build(Room start) {
+        if (start == null) {
+            throw new NullPointerException();
+        }
+        MapIO.SeqWalker walker = new MapIO.SeqWalker(start);
+        walker.walk();
+        List<Room> rooms = walker.seq;
+        Filler filler = new Filler(MapIO.ids(rooms));
+        String[] descriptions = new String[rooms.size()];
+        int[] offsets = new int[rooms.size() + 1];
+        int room = 0;
+        for (Room r : rooms) {
+            descriptions[room] = r.getDescription();
+            r.forEachExit(filler);
+            offsets[++room] = filler.count;
+        }
+        return new RoomGraph(descriptions, offsets,
+                Arrays.copyOf(filler.targets, filler.count),
+                Arrays.copyOf(filler.labels, filler.count),
+                filler.labelNames.toArray(new String[0]));
+    }
+
+    /**
+     * Collects the exits of each room in turn while building.
+     */
+    private static final class Filler
+            implements BiConsumer<String, Room> {
+        // Number of each room in the snapshot
+        private final RoomIntTable ids;
+        // Label id of each label seen so far
+        private final Map<String, Integer> labelIds = new HashMap<>();
+        // Labels in order of id
+        private final List<String> labelNames = new ArrayList<>();
+        // Targets so far (only the first count are used)
+        private int[] targets = new int[16];
+        // Label ids so far (only the first count are used)
+        private int[] labels = new int[16];
+        // Number of exits so far
+        private int count;
+
+        Filler(RoomIntTable ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public void accept(String label, Room target) {
+            if (count == targets.length) {
+                targets = Arrays.copyOf(targets, count * 2);
+                labels = Arrays.copyOf(labels, count * 2);
+            }
+            Integer id = labelIds.get(label);
+            if (id == null) {
+                id = labelNames.size();
+                labelIds.put(label, id);
+                labelNames.add(label);
+            }
+            targets[count] = ids.get(target);
+            labels[count] = id;
+            count++;
+        }
+    }
+
+    /**
+     * @return number of rooms
+     */
+    public int roomCount() {
+        return descriptions.length;
+    }
+
+    /**
+     * @return number of exits from all rooms
+     */
+    public int exitCount() {
+        return targets.length;
+    }
+
+    /**
+     * @param room Room number
+     * @return description of the room
+     */
+    public String getDescription(int room) {
+        return descriptions[room];
+    }
+
+    /**
+     * @param room Room number
+     * @return number of the room's first exit
+     */
+    public int exitStart(int room) {
+        return offsets[room];
+    }
+
+    /**
+     * @param room Room number
+     * @return one more than the number of the room's last exit
+     */
+    public int exitEnd(int room) {
+        return offsets[room + 1];
+    }
+
+    /**
+     * @param exit Exit number
+     * @return number of the room the exit goes to
+     */
+    public int exitTarget(int exit) {
+        return targets[exit];
+    }
+
+    /**
+     * @param exit Exit number
+     * @return label id of the exit
+     */
+    public int exitLabelId(int exit) {
+        return labels[exit];
+    }
+
+    /**
+     * @param exit Exit number
+     * @return label of the exit
+     */
+    public String exitLabel(int exit) {
+        return labelNames[labels[exit]];
+    }
+
+    /**
+     * @return number of distinct exit labels
+     */
+    public int labelCount() {
+        return labelNames.length;
+    }
+
+    /**
+     * @param labelId Label id
+     * @return the label with that id
+     */
+    public String label(int labelId) {
+        return labelNames[labelId];
+    }
+
+    /**
+     * Where does an exit go?
+     *
+     * @param room Room number
+     * @param label Name of the exit
+     * @return number of the room the exit goes to or -1 if there is none
+     */
+    public int exit(int room, String label) {
+        for (int e = offsets[room]; e < offsets[room + 1]; e++) {
+            if (labelNames[labels[e]].equals(label)) {
+                return targets[e];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the rooms which can be reached from a room.
+     *
+     * @param from Room number to start from
+     * @return set of reachable room numbers (including from)
+     */
+    public BitSet reachable(int from) {
+        BitSet seen = new BitSet(roomCount());
+        int[] queue = new int[roomCount()];
+        int head = 0;
+        int tail = 0;
+        seen.set(from);
+        queue[tail++] = from;
+        while (head < tail) {
+            int room = queue[head++];
+            for (int e = offsets[room]; e < offsets[room + 1]; e++) {
+                int target = targets[e];
+                if (!seen.get(target)) {
+                    seen.set(target);
+                    queue[tail++] = target;
+                }
+            }
+        }
+        return seen;
+    }
+
+    /**
+     * Count the exits needed to get from a room to every other room.
+     *
+     * @param from Room number to start from
+     * @return distance to each room, -1 for rooms which can not be reached
+     */
+    public int[] distances(int from) {
+        int[] distance = new int[roomCount()];
+        Arrays.fill(distance, -1);
+        int[] queue = new int[roomCount()];
+        int head = 0;
+        int tail = 0;
+        distance[from] = 0;
+        queue[tail++] = from;
+        while (head < tail) {
+            int room = queue[head++];
+            for (int e = offsets[room]; e < offsets[room + 1]; e++) {
+                int target = targets[e];
+                if (distance[target] < 0) {
+                    distance[target] = distance[room] + 1;
+                    queue[tail++] = target;
+                }
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * @return number of rooms with at most one exit
+     */
+    public int deadEndCount() {
+        int count = 0;
+        for (int room = 0; room < roomCount(); room++) {
+            if (offsets[room + 1] - offsets[room] <= 1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Make new Rooms with the descriptions and exits of the snapshot.
+     * The Rooms are empty and have no listeners.
+     *
+     * @return the rooms, indexed by room number (room 0 is the start)
+     */
+    public Room[] toRooms() {
+        Room[] rooms = new Room[roomCount()];
+        for (int room = 0; room < rooms.length; room++) {
+            rooms[room] = new Room(descriptions[room]);
+        }
+        for (int room = 0; room < rooms.length; room++) {
+            for (int e = offsets[room]; e < offsets[room + 1]; e++) {
+                rooms[room].loadExit(labelNames[labels[e]],
+                        rooms[targets[e]]);
+            }
+        }
+        return rooms;
+    }
+}
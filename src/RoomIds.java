@@ -0,0 +1,136 @@
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Hands out the dense int ids of {@link Room Room}s.
+ * <br />Every Room gets an id when it is created. Ids start at 0 and are
+ * handed out in blocks: each thread takes the ids of its own block in
+ * order, without locking, and only takes the lock to get a new block.
+ * Each Room keeps its block reachable, so once every Room given an id
+ * from a block has been garbage collected the block is handed out again
+ * (lowest first). Ids therefore stay close to the largest number of Rooms
+ * alive at once however many maps a long-running program loads and
+ * drops. The rooms of one map have ids close together and tables indexed
+ * by id ({@link RoomSet RoomSet}, {@link RoomIntTable RoomIntTable},
+ * {@link RoomLongTable RoomLongTable}) only need a few pages to cover
+ * them.
+ * <br />Since ids are reused, a table entry set for a Room is only
+ * meaningful while that Room is alive: tables which outlive a walk should
+ * keep their Rooms reachable (as {@link PathFinder PathFinder} does).
+ * <br />Reuse is followed by one PhantomReference per block rather than
+ * per Room.
+ */
+final class RoomIds {
+
+    // Number of ids in a block
+    private static final int BLOCK_SIZE = 256;
+    // Number of blocks there are ids for
+    private static final int MAX_BLOCKS = Integer.MAX_VALUE / BLOCK_SIZE;
+
+    // Tells RoomIds about blocks whose Rooms have all been collected
+    private static final ReferenceQueue<Block> COLLECTED =
+            new ReferenceQueue<Block>();
+    // Reference to each block in use, by block number (null for free
+    // blocks); keeps the references reachable until they are enqueued
+    private static BlockReference[] holders = new BlockReference[64];
+    // Block numbers below next which are free
+    private static final BitSet FREE = new BitSet();
+    // No block number below this is free
+    private static int lowestFree;
+    // One more than the largest block number ever handed out
+    private static int next;
+    // Block each thread is taking ids from
+    private static final ThreadLocal<Block> CURRENT =
+            new ThreadLocal<Block>();
+
+    private RoomIds() {
+    }
+
+    /**
+     * Ids handed out together. Only the thread which took the block from
+     * {@link #block()} takes ids from it.
+     */
+    static final class Block {
+        // First id of the block
+        private final int first;
+        // Number of ids taken
+        private int taken;
+
+        Block(int first) {
+            this.first = first;
+        }
+
+        /**
+         * @return the next id of the block
+         */
+        int take() {
+            return first + taken++;
+        }
+    }
+
+    /**
+     * Get the calling thread's block for a new Room, which should call
+     * {@link Block#take() take} on it once and keep it for as long as the
+     * Room lives.
+     *
+     * @return a block with an id left
+     * @throws IllegalStateException if every id is held by a live Room
+     */
+    static Block block() {
+        Block block = CURRENT.get();
+        if (block == null || block.taken == BLOCK_SIZE) {
+            block = newBlock();
+            CURRENT.set(block);
+        }
+        return block;
+    }
+
+    /**
+     * Hand out a block, reusing the lowest one whose Rooms are all gone.
+     */
+    private static synchronized Block newBlock() {
+        for (Reference<? extends Block> collected = COLLECTED.poll();
+                collected != null; collected = COLLECTED.poll()) {
+            int number = ((BlockReference) collected).number;
+            holders[number] = null;
+            FREE.set(number);
+            lowestFree = Math.min(lowestFree, number);
+        }
+        int number = FREE.nextSetBit(lowestFree);
+        if (number >= 0) {
+            FREE.clear(number);
+            lowestFree = number + 1;
+        } else {
+            if (next == MAX_BLOCKS) {
+                throw new IllegalStateException("out of room ids");
+            }
+            number = next++;
+            lowestFree = next;
+            if (number == holders.length) {
+                holders = Arrays.copyOf(holders,
+                        Math.min(MAX_BLOCKS, number * 2));
+            }
+        }
+        Block block = new Block(number * BLOCK_SIZE);
+        holders[number] = new BlockReference(block, number);
+        return block;
+    }
+
+    /**
+     * Enqueued once every Room of its block has been collected, with the
+     * block number to free.
+     */
+    private static final class BlockReference
+            extends PhantomReference<Block> {
+        // Number of the block
+        private final int number;
+
+        BlockReference(Block block, int number) {
+            super(block, COLLECTED);
+            this.number = number;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.Arrays;
+
+/**
+ * An int for each {@link Room Room}, stored in an array indexed by
+ * {@link Room#getId() id} rather than a Map.
+ * <br />Values are kept in pages which are only created once a value is
+ * stored for a Room with an id in that page. Rooms without a value give
+ * the missing value chosen when the table was created. Not safe for use
+ * by several threads at once.
+ */
+final class RoomIntTable {
+
+    // Number of id bits which select an entry within a page
+    private static final int PAGE_BITS = 12;
+    // Number of entries in a page
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    // Value of Rooms which have not been given one
+    private final int missing;
+    // Pages of values, indexed by id >>> PAGE_BITS (null if never used)
+    private int[][] pages = new int[1][];
+
+    /**
+     * @param missing Value of Rooms which have not been given one
+     */
+    RoomIntTable(int missing) {
+        this.missing = missing;
+    }
+
+    /**
+     * @param room Room to look up (may be null)
+     * @return room's value or the missing value
+     */
+    int get(Room room) {
+        if (room == null) {
+            return missing;
+        }
+        int id = room.getId();
+        int index = id >>> PAGE_BITS;
+        if (index >= pages.length || pages[index] == null) {
+            return missing;
+        }
+        return pages[index][id & (PAGE_SIZE - 1)];
+    }
+
+    /**
+     * Set the value of a Room.
+     *
+     * @param room Room to set the value of
+     * @param value New value
+     * @throws NullPointerException if room is null
+     */
+    void put(Room room, int value) {
+        int id = room.getId();
+        int index = id >>> PAGE_BITS;
+        if (index >= pages.length) {
+            pages = Arrays.copyOf(pages,
+                    Math.max(index + 1, pages.length * 2));
+        }
+        int[] page = pages[index];
+        if (page == null) {
+            page = new int[PAGE_SIZE];
+            if (missing != 0) {
+                Arrays.fill(page, missing);
+            }
+            pages[index] = page;
+        }
+        page[id & (PAGE_SIZE - 1)] = value;
+    }
+
+    /**
+     * Give every Room the missing value again, keeping the pages for reuse.
+     */
+    void clear() {
+        for (int[] page : pages) {
+            if (page != null) {
+                Arrays.fill(page, missing);
+            }
+        }
+    }
+}
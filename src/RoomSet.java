@@ -0,0 +1,95 @@
+import java.util.Arrays;
+
+/**
+ * A set of {@link Room Room}s stored as one bit per {@link Room#getId() id}.
+ * <br />Bits are kept in pages which are only created once a Room with an
+ * id in that page is added, so a set of the rooms of a small map costs a
+ * few hundred bytes however many Rooms the program has created. Rooms are
+ * compared by identity. Not safe for use by several threads at once.
+ */
+final class RoomSet {
+
+    // Number of id bits which select a bit within a page
+    private static final int PAGE_BITS = 12;
+    // Number of longs in a page
+    private static final int PAGE_WORDS = (1 << PAGE_BITS) / Long.SIZE;
+
+    // Pages of bits, indexed by id >>> PAGE_BITS (null if never used)
+    private long[][] pages = new long[1][];
+    // Number of Rooms in the set
+    private int size;
+
+    /**
+     * Add a Room.
+     *
+     * @param room Room to add
+     * @return true if room was not already in the set
+     * @throws NullPointerException if room is null
+     */
+    boolean add(Room room) {
+        int id = room.getId();
+        long[] page = page(id);
+        int word = (id >>> 6) & (PAGE_WORDS - 1);
+        long bit = 1L << id;
+        if ((page[word] & bit) != 0) {
+            return false;
+        }
+        page[word] |= bit;
+        size++;
+        return true;
+    }
+
+    /**
+     * @param room Room to look for (may be null)
+     * @return true if room is in the set
+     */
+    boolean contains(Room room) {
+        if (room == null) {
+            return false;
+        }
+        int id = room.getId();
+        int index = id >>> PAGE_BITS;
+        if (index >= pages.length || pages[index] == null) {
+            return false;
+        }
+        return (pages[index][(id >>> 6) & (PAGE_WORDS - 1)]
+                & (1L << id)) != 0;
+    }
+
+    /**
+     * @return number of Rooms in the set
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Remove every Room, keeping the pages for reuse.
+     */
+    void clear() {
+        for (long[] page : pages) {
+            if (page != null) {
+                Arrays.fill(page, 0);
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * @param id Room id
+     * @return the page holding id's bit, created if needed
+     */
+    private long[] page(int id) {
+        int index = id >>> PAGE_BITS;
+        if (index >= pages.length) {
+            pages = Arrays.copyOf(pages,
+                    Math.max(index + 1, pages.length * 2));
+        }
+        long[] page = pages[index];
+        if (page == null) {
+            page = new long[PAGE_WORDS];
+            pages[index] = page;
+        }
+        return page;
+    }
+}
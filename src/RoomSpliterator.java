@@ -0,0 +1,123 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Pulls the {@link Room Room}s reachable from a start room one at a time,
+ * breadth first. Each room's exits are only looked at when the room is
+ * reached, so a consumer which stops early never touches the rest of the
+ * map. Used by {@link MapWalker#stream(Room) MapWalker.stream}.
+ * <br />Unsplit, rooms come out in the same order as MapWalker visits
+ * them. Splitting hands half of the rooms waiting to be reached to the
+ * new Spliterator; the halves carry on from there side by side, and
+ * share a {@link ConcurrentRoomSet ConcurrentRoomSet} of rooms seen so
+ * each room is still produced exactly once, though no longer in any
+ * particular order.
+ * <br />The map must not change while rooms are being pulled.
+ */
+final class RoomSpliterator implements Spliterator<Room> {
+
+    // Rooms to grow the frontier to before giving half away
+    private static final int SPLIT_MIN = 64;
+    // Most rooms to reach ahead while growing the frontier
+    private static final int SPLIT_BUDGET = 1024;
+
+    // Rooms which have been queued by any of the split Spliterators
+    private final ConcurrentRoomSet queued;
+    // Rooms reached ahead by trySplit, to produce before toVisit
+    private final Deque<Room> reached = new ArrayDeque<Room>();
+    // Rooms queued but not yet reached
+    private final Deque<Room> toVisit;
+    // Rough number of rooms left (Long.MAX_VALUE if unknown)
+    private long estimate;
+    // Queues each exit of the room being reached, unless already seen
+    private final BiConsumer<String, Room> enqueue;
+
+    /**
+     * @param start Room to begin exploring from
+     * @throws NullPointerException if start is null
+     */
+    RoomSpliterator(Room start) {
+        this(new ConcurrentRoomSet(), new ArrayDeque<Room>(), Long.MAX_VALUE);
+        queued.add(start);
+        toVisit.add(start);
+    }
+
+    private RoomSpliterator(ConcurrentRoomSet queued, Deque<Room> toVisit,
+            long estimate) {
+        this.queued = queued;
+        this.toVisit = toVisit;
+        this.estimate = estimate;
+        enqueue = (label, exit) -> {
+            if (queued.add(exit)) {
+                toVisit.add(exit);
+            }
+        };
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Room> action) {
+        Room room = next();
+        if (room == null) {
+            return false;
+        }
+        action.accept(room);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Room> action) {
+        for (Room room = next(); room != null; room = next()) {
+            action.accept(room);
+        }
+    }
+
+    /**
+     * Reach a room, queueing its exits.
+     *
+     * @return the room or null if there are no more
+     */
+    private Room next() {
+        Room room = reached.pollFirst();
+        if (room == null) {
+            room = toVisit.pollFirst();
+            if (room != null) {
+                room.forEachExit(enqueue);
+            }
+        }
+        return room;
+    }
+
+    @Override
+    public Spliterator<Room> trySplit() {
+        // reach a few rooms ahead so a small frontier has something to give
+        while (toVisit.size() < SPLIT_MIN && reached.size() < SPLIT_BUDGET
+                && !toVisit.isEmpty()) {
+            Room room = toVisit.removeFirst();
+            room.forEachExit(enqueue);
+            reached.add(room);
+        }
+        int half = toVisit.size() / 2;
+        if (half == 0) {
+            return null;
+        }
+        Deque<Room> given = new ArrayDeque<Room>(half);
+        for (int i = 0; i < half; i++) {
+            given.add(toVisit.removeLast());
+        }
+        estimate >>>= 1;
+        return new RoomSpliterator(queued, given, estimate);
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return DISTINCT | NONNULL;
+    }
+}
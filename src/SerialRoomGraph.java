@@ -0,0 +1,256 @@
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serialized form of a {@link Room Room} and everything reachable from it.
+ * <br />Default serialization follows the exits of each Room recursively,
+ * so long corridors overflow the stack. Room instead replaces itself with
+ * one of these, which numbers the reachable rooms with a
+ * {@link MapWalker MapWalker} and writes them one after another, with exits
+ * stored as room ids.
+ * <br />Strings are written the first time they are used and referred to
+ * by index after that.
+ * <br />Note: each Room written with writeObject produces its own copy of
+ * the graph, so Rooms from one map should be written through a single root.
+ *
+ * @serial exclude
+ */
+public class SerialRoomGraph implements Externalizable {
+
+    // Version of the class (the layout has its own VERSION)
+    private static final long serialVersionUID = 1L;
+
+    // Format version written before the graph
+    private static final int VERSION = 1;
+
+    // Thing record tags
+    private static final int TREASURE = '$';
+    private static final int CRITTER = 'C';
+    private static final int EXPLORER = 'E';
+    // Any other Thing, written with the stream's writeObject
+    private static final int OBJECT = 'O';
+
+    // Room the graph is written from (or was read into)
+    private Room root;
+
+    // Strings written so far and their index
+    private Map<String, Integer> written;
+    // Strings read so far, by index
+    private List<String> read;
+
+    /**
+     * Used by deserialization.
+     */
+    public SerialRoomGraph() {
+    }
+
+    /**
+     * @param root Room to serialize the map from
+     */
+    SerialRoomGraph(Room root) {
+        this.root = root;
+    }
+
+    /**
+     * Write every Room reachable from the root.
+     * <br />The layout is: version, room count, then for each room (root
+     * first) its description, exits (count then target id and label pairs)
+     * and contents (count then one Thing record each).
+     *
+     * @param out Destination
+     * @throws IOException if out fails
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        written = new HashMap<>();
+        MapIO.SeqWalker walker = new MapIO.SeqWalker(root);
+        walker.walk();
+        List<Room> rooms = walker.seq;
+        RoomIntTable ids = MapIO.ids(rooms);
+        BinaryMapIO.writeVarint(out, VERSION);
+        BinaryMapIO.writeVarint(out, rooms.size());
+        for (Room room : rooms) {
+            writeText(out, room.getDescription());
+            Map<String, Room> exits = room.getExits();
+            BinaryMapIO.writeVarint(out, exits.size());
+            for (Map.Entry<String, Room> exit : exits.entrySet()) {
+                BinaryMapIO.writeVarint(out, ids.get(exit.getValue()));
+                writeText(out, exit.getKey());
+            }
+            writeThings(out, room.getContents());
+        }
+        written = null;
+    }
+
+    /**
+     * Rebuild the rooms written by {@link #writeExternal(ObjectOutput)}.
+     *
+     * @param in Source
+     * @throws IOException if in fails or the data is not a valid map
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        read = new ArrayList<>();
+        if (BinaryMapIO.readVarint(in) != VERSION) {
+            throw new IOException("unknown room graph version");
+        }
+        Room[] rooms = new Room[BinaryMapIO.readVarint(in)];
+        if (rooms.length == 0) {
+            throw new IOException("empty room graph");
+        }
+        // rooms are created before they are described so that exits
+        // can refer forwards
+        for (int i = 0; i < rooms.length; i++) {
+            rooms[i] = new Room("");
+        }
+        root = rooms[0];
+        try {
+            for (Room room : rooms) {
+                room.loadDescription(readText(in));
+                int exits = BinaryMapIO.readVarint(in);
+                for (int j = 0; j < exits; j++) {
+                    Room target = rooms[BinaryMapIO.readVarint(in)];
+                    if (!room.loadExit(readText(in), target)) {
+                        throw new IOException("bad room graph");
+                    }
+                }
+                int things = BinaryMapIO.readVarint(in);
+                for (int j = 0; j < things; j++) {
+                    room.loadThing(readThing(in));
+                }
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            throw new IOException("bad room graph", ex);
+        }
+        read = null;
+    }
+
+    /**
+     * @return the root Room in place of this object
+     * @throws ObjectStreamException never
+     */
+    private Object readResolve() throws ObjectStreamException {
+        return root;
+    }
+
+    /**
+     * Write a String, or its index if it has been written before.
+     * Index 0 marks a new String, which follows as UTF-8.
+     */
+    private void writeText(ObjectOutput out, String text) throws IOException {
+        Integer index = written.get(text);
+        if (index != null) {
+            BinaryMapIO.writeVarint(out, index + 1);
+        } else {
+            BinaryMapIO.writeVarint(out, 0);
+            BinaryMapIO.writeString(out, text);
+            written.put(text, written.size());
+        }
+    }
+
+    /**
+     * Read a String written by {@link #writeText(ObjectOutput, String)}.
+     */
+    private String readText(ObjectInput in) throws IOException {
+        int index = BinaryMapIO.readVarint(in);
+        if (index > 0) {
+            return read.get(index - 1);
+        }
+        String text = BinaryMapIO.readString(in);
+        read.add(text);
+        return text;
+    }
+
+    /**
+     * Write a count followed by a record for each Thing.
+     */
+    private void writeThings(ObjectOutput out, List<Thing> things)
+            throws IOException {
+        BinaryMapIO.writeVarint(out, things.size());
+        for (Thing thing : things) {
+            writeThing(out, thing);
+        }
+    }
+
+    /**
+     * Write a Thing record, including a Player's inventory.
+     */
+    private void writeThing(ObjectOutput out, Thing thing)
+            throws IOException {
+        if (thing instanceof Treasure) {
+            out.writeByte(TREASURE);
+            out.writeDouble(((Treasure) thing).getValue());
+            writeText(out, thing.getShort());
+        } else if (thing instanceof Critter) {
+            Critter critter = (Critter) thing;
+            out.writeByte(CRITTER);
+            out.writeDouble(critter.getValue());
+            BinaryMapIO.writeSignedVarint(out, critter.getHealth());
+            writeText(out, thing.getShort());
+            writeText(out, thing.getLong());
+        } else if (thing instanceof Explorer) {
+            Explorer explorer = (Explorer) thing;
+            out.writeByte(EXPLORER);
+            BinaryMapIO.writeSignedVarint(out, explorer.getHealth());
+            writeText(out, thing.getShort());
+            writeText(out, thing.getLong());
+            writeThings(out, explorer.getContents());
+        } else {
+            // other kinds of Thing may hold more than repr() gives, and
+            // may not be known to MapIO at all
+            out.writeByte(OBJECT);
+            out.writeObject(thing);
+        }
+    }
+
+    /**
+     * Read a record written by {@link #writeThing(ObjectOutput, Thing)}.
+     */
+    private Thing readThing(ObjectInput in) throws IOException {
+        switch (in.readUnsignedByte()) {
+        case TREASURE: {
+            double value = in.readDouble();
+            return new Treasure(readText(in), value);
+        }
+        case CRITTER: {
+            double value = in.readDouble();
+            int health = BinaryMapIO.readSignedVarint(in);
+            String shortDescription = readText(in);
+            return new Critter(shortDescription, readText(in), value,
+                    health);
+        }
+        case EXPLORER: {
+            int health = BinaryMapIO.readSignedVarint(in);
+            String shortDescription = readText(in);
+            Explorer explorer = new Explorer(shortDescription,
+                    readText(in), health);
+            int carried = BinaryMapIO.readVarint(in);
+            for (int i = 0; i < carried; i++) {
+                explorer.add(readThing(in));
+            }
+            return explorer;
+        }
+        case OBJECT: {
+            Object thing;
+            try {
+                thing = in.readObject();
+            } catch (ClassNotFoundException ex) {
+                throw new IOException("unknown kind of thing", ex);
+            }
+            if (!(thing instanceof Thing)) {
+                throw new IOException("bad thing record");
+            }
+            return (Thing) thing;
+        }
+        default:
+            throw new IOException("unknown thing record");
+        }
+    }
+}
@@ -0,0 +1,195 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Room Room} which several threads can use at once, for worlds
+ * shared between players.
+ * <br />Each SharedRoom is its own lock: every method holds the room's
+ * monitor while it runs, so enter, leave, addExit and removeExit each
+ * take effect at a single point and threads in different rooms never
+ * wait for each other. Code which needs several steps on one room to be
+ * atomic can synchronize on the room itself.
+ * {@link Room#makeExitPair(Room, Room, String, String) makeExitPair} and
+ * {@link #move(Thing, Room) move} lock both rooms, lowest
+ * {@link Room#getId() id} first, so they can not deadlock with each
+ * other.
+ * <br />getExits() and getContents() return copies, since the rooms may
+ * change while they are being looked at. Listeners, and the actions given
+ * to forEachExit and forEachThing, are called while the room is locked:
+ * they should be quick and must not wait for other threads.
+ * <br />A SharedRoom which is serialized is read back as a plain Room.
+ */
+public class SharedRoom extends Room {
+
+    // Written as a SerialRoomGraph, so this only marks the class's version
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param description Description for the room Note: each \r \n
+     *                    in description will be replaced with a `*`.
+     */
+    public SharedRoom(String description) {
+        super(description);
+    }
+
+    @Override
+    public synchronized int getGeneration() {
+        return super.getGeneration();
+    }
+
+    @Override
+    public synchronized boolean isDirty() {
+        return super.isDirty();
+    }
+
+    @Override
+    public synchronized void markClean() {
+        super.markClean();
+    }
+
+    @Override
+    public synchronized void markDirty() {
+        super.markDirty();
+    }
+
+    @Override
+    public synchronized String getDescription() {
+        return super.getDescription();
+    }
+
+    @Override
+    public synchronized void setDescription(String description) {
+        super.setDescription(description);
+    }
+
+    /**
+     * What exits are there from this Room?
+     *
+     * @return Non-modifiable copy of the exits, sorted by name
+     */
+    @Override
+    public synchronized Map<String, Room> getExits() {
+        return Collections.unmodifiableMap(
+                new TreeMap<String, Room>(super.getExits()));
+    }
+
+    @Override
+    public synchronized Room getExit(Direction direction) {
+        return super.getExit(direction);
+    }
+
+    /**
+     * What Things are in this Room?
+     *
+     * @return Non-modifiable copy of the Things in the Room
+     */
+    @Override
+    public synchronized List<Thing> getContents() {
+        return Collections.unmodifiableList(
+                new ArrayList<Thing>(super.getContents()));
+    }
+
+    @Override
+    public synchronized void forEachExit(
+            BiConsumer<? super String, ? super Room> action) {
+        super.forEachExit(action);
+    }
+
+    @Override
+    public synchronized void forEachThing(Consumer<? super Thing> action) {
+        super.forEachThing(action);
+    }
+
+    @Override
+    public synchronized int exitCount() {
+        return super.exitCount();
+    }
+
+    @Override
+    public synchronized int contentCount() {
+        return super.contentCount();
+    }
+
+    @Override
+    public synchronized void addExit(String name, Room target)
+            throws ExitExistsException, NullRoomException {
+        super.addExit(name, target);
+    }
+
+    @Override
+    public synchronized void removeExit(String name) {
+        super.removeExit(name);
+    }
+
+    @Override
+    public synchronized void enter(Thing item) {
+        super.enter(item);
+    }
+
+    @Override
+    public synchronized boolean leave(Thing item) {
+        return super.leave(item);
+    }
+
+    @Override
+    public synchronized void addListener(MapListener listener) {
+        super.addListener(listener);
+    }
+
+    @Override
+    public synchronized void removeListener(MapListener listener) {
+        super.removeListener(listener);
+    }
+
+    @Override
+    synchronized void mobHealthChanged(Mob mob) {
+        super.mobHealthChanged(mob);
+    }
+
+    /**
+     * Move a Thing from this Room to another in one step: no other thread
+     * sees it in both rooms or in neither.
+     * Fails (leaving item where it is) under the same conditions as
+     * {@link Room#leave(Thing) leave}.
+     *
+     * @param item Thing to move
+     * @param target Room to move it to
+     * @return true if item moved
+     * @throws NullRoomException if target is null
+     */
+    public boolean move(Thing item, Room target) throws NullRoomException {
+        if (target == null) {
+            throw new NullRoomException();
+        }
+        Room first = (getId() <= target.getId()) ? this : target;
+        Room second = (first == this) ? target : this;
+        synchronized (first) {
+            synchronized (second) {
+                // both rooms are held, so skip locking them again
+                if (!super.leave(item)) {
+                    return false;
+                }
+                if (target instanceof SharedRoom) {
+                    ((SharedRoom) target).enterHeld(item);
+                } else {
+                    target.enter(item);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Add a Thing while this room's monitor is already held.
+     *
+     * @param item Thing to add
+     */
+    private void enterHeld(Thing item) {
+        super.enter(item);
+    }
+}
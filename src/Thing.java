@@ -1,4 +1,7 @@
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Base class for anything which can be found in a Room.
@@ -20,6 +23,16 @@ public abstract class Thing implements Serializable {
      */
     private String longDescription;
 
+    // Listeners told about changes to this Thing (null if there are none);
+    // replaced rather than changed, so they can be told without a lock
+    private transient volatile MapListener[] listeners;
+    // Listeners of a Thing without any
+    private static final MapListener[] NO_LISTENERS = new MapListener[0];
+    // Replaces listeners if no other thread has since
+    private static final AtomicReferenceFieldUpdater<Thing, MapListener[]>
+            LISTENERS = AtomicReferenceFieldUpdater.newUpdater(Thing.class,
+                    MapListener[].class, "listeners");
+
     /**
      * Note: each, \r, \n and semi-colon in the parameter 
      *     will be replaced by *    
@@ -101,9 +114,93 @@ public abstract class Thing implements Serializable {
         return shortDescription;
     }
     
+    /**
+     * Be told about future changes to this Thing.
+     * Note: listeners are not serialized. Listeners can be added and
+     * removed from any thread.
+     *
+     * @param listener Listener to add
+     */
+    public void addListener(MapListener listener) {
+        MapListener[] current;
+        MapListener[] added;
+        do {
+            current = listeners;
+            if (current == null) {
+                added = new MapListener[] {listener};
+            } else {
+                added = Arrays.copyOf(current, current.length + 1);
+                added[current.length] = listener;
+            }
+        } while (!LISTENERS.compareAndSet(this, current, added));
+    }
+
+    /**
+     * Stop telling a listener about changes to this Thing.
+     *
+     * @param listener Listener to remove
+     */
+    public void removeListener(MapListener listener) {
+        MapListener[] current;
+        MapListener[] removed;
+        do {
+            current = listeners;
+            int i = indexOf(current, listener);
+            if (i < 0) {
+                return;
+            }
+            if (current.length == 1) {
+                removed = null;
+            } else {
+                removed = new MapListener[current.length - 1];
+                System.arraycopy(current, 0, removed, 0, i);
+                System.arraycopy(current, i + 1, removed, i,
+                        removed.length - i);
+            }
+        } while (!LISTENERS.compareAndSet(this, current, removed));
+    }
+
+    /**
+     * @param listeners Listeners to search (may be null)
+     * @param listener Listener to look for
+     * @return index of the first listener equal to listener, or -1
+     */
+    private static int indexOf(MapListener[] listeners,
+            MapListener listener) {
+        if (listeners != null) {
+            for (int i = 0; i < listeners.length; i++) {
+                if (listeners[i].equals(listener)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Allows subclasses to tell listeners about changes.
+     *
+     * @return the listeners at the time of the call (empty if there are
+     *         none); the array is shared and must not be changed
+     */
+    protected MapListener[] getListeners() {
+        MapListener[] current = listeners;
+        return (current == null) ? NO_LISTENERS : current;
+    }
+
     /** Get a representation of the object suitable for saving.
     @return A single line encoding enough information to identify 
     *    the type and recreate it.
     */
     public abstract String repr();
+
+    /** Write the same text as {@link #repr() repr()} to out.
+    * Subclasses should override this to write their fields directly 
+    *     rather than building a String first.
+    * @param out Destination for the encoded form
+    * @throws IOException if out fails
+    */
+    public void writeRepr(Appendable out) throws IOException {
+        out.append(repr());
+    }
 }
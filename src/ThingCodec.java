@@ -0,0 +1,18 @@
+/**
+ * Decodes the {@link Thing#repr() repr()} form of one kind of Thing.
+ * <br />Codecs are registered with {@link ThingCodecs ThingCodecs} under the
+ * first character of the form they decode (the type tag).
+ * {@link ThingFields ThingFields} reads the fields of an encoded Thing
+ * without splitting it.
+ */
+@FunctionalInterface
+public interface ThingCodec {
+
+    /**
+     * Decode a Thing.
+     *
+     * @param encoded repr() form of the Thing (never null or empty)
+     * @return decoded Thing or null if encoded is not valid
+     */
+    Thing decode(CharSequence encoded);
+}
@@ -0,0 +1,85 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of {@link ThingCodec ThingCodec}s keyed by type tag (the first
+ * character of a Thing's {@link Thing#repr() repr()} form).
+ * <br />{@link Treasure Treasure} ('$'), {@link Critter Critter} ('C') and
+ * {@link Explorer Explorer} ('E') are registered from the start. Other
+ * Thing subclasses can register themselves, eg from a static initializer:
+ * <pre>
+ *     static {
+ *         ThingCodecs.register('G', Ghost::decode);
+ *     }
+ * </pre>
+ * Note: such a class must be initialised before maps containing it are
+ * loaded.
+ */
+public final class ThingCodecs {
+
+    // Codecs for ASCII tags, indexed by tag (replaced, never modified)
+    private static volatile ThingCodec[] ascii = new ThingCodec[128];
+    // Codecs for any other tags
+    private static final Map<Character, ThingCodec> others =
+            new ConcurrentHashMap<>();
+
+    static {
+        register('$', Treasure::decode);
+        register('C', Critter::decode);
+        register('E', Explorer::decode);
+    }
+
+    private ThingCodecs() {
+    }
+
+    /**
+     * Register the codec for a type tag, replacing any earlier one.
+     *
+     * @param tag First character of the encoded forms to decode
+     * @param codec Codec to use
+     * @return the codec previously registered for tag (or null)
+     * @throws NullPointerException if codec is null
+     */
+    public static synchronized ThingCodec register(char tag,
+            ThingCodec codec) {
+        if (codec == null) {
+            throw new NullPointerException();
+        }
+        if (tag >= ascii.length) {
+            return others.put(tag, codec);
+        }
+        ThingCodec[] codecs = ascii.clone();
+        ThingCodec previous = codecs[tag];
+        codecs[tag] = codec;
+        ascii = codecs;
+        return previous;
+    }
+
+    /**
+     * Find the codec for a type tag.
+     *
+     * @param tag First character of an encoded form
+     * @return the codec or null if none is registered
+     */
+    public static ThingCodec get(char tag) {
+        if (tag < 128) {
+            return ascii[tag];
+        }
+        return others.get(tag);
+    }
+
+    /**
+     * Decode a Thing using the codec registered for its type tag.
+     *
+     * @param encoded repr() form of the Thing
+     * @return decoded Thing or null for failure. Failures include null or
+     *         empty input, unknown tags and improperly encoded input.
+     */
+    public static Thing decode(CharSequence encoded) {
+        if (encoded == null || encoded.length() == 0) {
+            return null;
+        }
+        ThingCodec codec = get(encoded.charAt(0));
+        return (codec == null) ? null : codec.decode(encoded);
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Reads the semicolon separated fields of an encoded {@link Thing Thing}
+ * in order, straight from the text.
+ * <br />Fields are the same as those <code>encoded.split(";")</code> would
+ * give (so trailing empty fields do not count), but no array is built and
+ * numbers are parsed without creating Strings. Numbers are accepted exactly
+ * when {@link Integer#parseInt(String)} and
+ * {@link Double#parseDouble(String)} would accept them.
+ */
+public final class ThingFields {
+
+    // Separator between fields
+    private static final char SEPARATOR = ';';
+    // Largest number of digits which can be accumulated without overflow
+    private static final int INT_DIGITS = 9;
+    // Largest mantissa which is exactly representable as a double
+    private static final long EXACT_MANTISSA = 1L << 53;
+    // Powers of ten which are exactly representable as doubles
+    private static final double[] POWERS = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Text being read
+    private final CharSequence text;
+    // End of the last field
+    private final int end;
+    // Number of fields
+    private final int count;
+    // Start of the next field
+    private int position;
+    // Number of fields read so far
+    private int read;
+
+    /**
+     * @param text Encoded Thing to read
+     */
+    public ThingFields(CharSequence text) {
+        this.text = text;
+        int last = text.length();
+        while (last > 0 && text.charAt(last - 1) == SEPARATOR) {
+            last--;
+        }
+        end = last;
+        if (last == 0) {
+            // "" is one empty field, ";;" is none
+            count = (text.length() == 0) ? 1 : 0;
+            return;
+        }
+        int separators = 0;
+        for (int i = 0; i < last; i++) {
+            if (text.charAt(i) == SEPARATOR) {
+                separators++;
+            }
+        }
+        count = separators + 1;
+    }
+
+    /**
+     * @return number of fields
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return true if there are fields left to read
+     */
+    public boolean hasNext() {
+        return read < count;
+    }
+
+    /**
+     * Move past the next field.
+     *
+     * @throws IndexOutOfBoundsException if there are no fields left
+     */
+    public void skip() {
+        position = fieldEnd() + 1;
+        read++;
+    }
+
+    /**
+     * Read the next field as a String.
+     *
+     * @return the field
+     * @throws IndexOutOfBoundsException if there are no fields left
+     */
+    public String nextString() {
+        int start = position;
+        int stop = fieldEnd();
+        position = stop + 1;
+        read++;
+        return text.subSequence(start, stop).toString();
+    }
+
+    /**
+     * Read the next field as an int.
+     *
+     * @return the value
+     * @throws NumberFormatException if the field is not an int
+     * @throws IndexOutOfBoundsException if there are no fields left
+     */
+    public int nextInt() {
+        int start = position;
+        int stop = fieldEnd();
+        position = stop + 1;
+        read++;
+        int i = start;
+        boolean negative = false;
+        if (i < stop && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        if (i == stop || stop - i > INT_DIGITS) {
+            return slowInt(start, stop);
+        }
+        int value = 0;
+        for (; i < stop; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return slowInt(start, stop);
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Read the next field as a double.
+     * <br />Plain decimals whose digits fit in a double's 53 bit mantissa
+     * (such as those written by repr()) are parsed directly; a division of
+     * two exactly representable values gives the same, correctly rounded,
+     * result as Double.parseDouble. Anything else is passed to
+     * Double.parseDouble.
+     *
+     * @return the value
+     * @throws NumberFormatException if the field is not a double
+     * @throws IndexOutOfBoundsException if there are no fields left
+     */
+    public double nextDouble() {
+        int start = position;
+        int stop = fieldEnd();
+        position = stop + 1;
+        read++;
+        int i = start;
+        boolean negative = false;
+        if (i < stop && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < stop; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            int digit = c - '0';
+            if (digit < 0 || digit > 9) {
+                return slowDouble(start, stop);
+            }
+            mantissa = mantissa * 10 + digit;
+            if (mantissa >= EXACT_MANTISSA) {
+                return slowDouble(start, stop);
+            }
+            digits++;
+            if (decimals >= 0) {
+                decimals++;
+            }
+        }
+        if (digits == 0 || decimals >= POWERS.length) {
+            return slowDouble(start, stop);
+        }
+        double value = (decimals > 0) ? mantissa / POWERS[decimals]
+                : (double) mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return index just past the next field
+     * @throws IndexOutOfBoundsException if there are no fields left
+     */
+    private int fieldEnd() {
+        if (read >= count) {
+            throw new IndexOutOfBoundsException("no more fields");
+        }
+        int i = position;
+        while (i < end && text.charAt(i) != SEPARATOR) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Parse an int which the fast path does not handle.
+     */
+    private int slowInt(int start, int stop) {
+        return Integer.parseInt(text.subSequence(start, stop).toString());
+    }
+
+    /**
+     * Parse a double which the fast path does not handle.
+     */
+    private double slowDouble(int start, int stop) {
+        return Double.parseDouble(text.subSequence(start, stop).toString());
+    }
+}
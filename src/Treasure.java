@@ -1,3 +1,5 @@
+import java.io.IOException;
+
 /**
  * Lootable object which doesn't fight.
  *
@@ -47,7 +49,14 @@ public class Treasure extends Thing implements Lootable {
     */
     @Override
     public String repr() {
-        return "$;"+String.format("%.5f", value)+";"+getShort();
+        return "$;"+FixedDecimal.fixed5(value)+";"+getShort();
+    }
+
+    @Override
+    public void writeRepr(Appendable out) throws IOException {
+        out.append("$;");
+        FixedDecimal.appendFixed5(out, value);
+        out.append(';').append(getShort());
     }
     
     /** Factory to create Treasure from a String
@@ -55,17 +64,18 @@ public class Treasure extends Thing implements Lootable {
     * @return decoded Object or null for failure.  Failures include:  
                null parameters, empty input or improperly encoded input.
     */
-    public static Treasure decode(String encoded) {
+    public static Treasure decode(CharSequence encoded) {
         if (encoded == null) {
             return null;
         }
-        String[] toks = encoded.split(";");
-        if (toks.length != 3) {
+        ThingFields toks = new ThingFields(encoded);
+        if (toks.count() != 3) {
             return null;
         }
         try {
-            double val = Double.parseDouble(toks[1]);
-            return new Treasure(toks[2], val);
+            toks.skip();
+            double val = toks.nextDouble();
+            return new Treasure(toks.nextString(), val);
         } catch (NumberFormatException nfe) {
             return null;
         }
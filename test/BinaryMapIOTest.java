@@ -0,0 +1,134 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Checks that {@link BinaryMapIO BinaryMapIO} keeps everything the text
+ * format holds: a map saved both ways, and the maps in maps/, must come back
+ * the same through binary and text, and a cut short or corrupt binary map
+ * must give null rather than throwing or running out of memory. The binary
+ * spiral.map, which repeats one description, must be less than half the
+ * size of the text one.
+ * <br />Build the game classes first, then from the top of the project:
+ * <pre>
+ * javac -cp classes -d classes test/*.java
+ * java -cp classes BinaryMapIOTest
+ * </pre>
+ */
+public class BinaryMapIOTest {
+
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("binarymap").toFile();
+        try {
+            built(dir);
+            for (File map : new File("maps").listFiles()) {
+                if (map.getName().endsWith(".map")) {
+                    converted(map, dir);
+                }
+            }
+            corrupt(dir);
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+        System.out.println("BinaryMapIOTest passed");
+    }
+
+    /**
+     * Save a map made here both ways and compare them.
+     */
+    private static void built(File dir) throws Exception {
+        Room hall = new Room("a hall");
+        Room cellar = new Room("a cellar; damp");
+        Room tower = new Room("an empty room");
+        Room.makeExitPair(hall, cellar, "South", "North");
+        Room.makeExitPair(hall, tower, "East", "West");
+        tower.addExit("Down", hall);
+        hall.enter(new Treasure("coin", 2.5));
+        Critter rat = new Critter("rat", "a fat rat", 1.0, 4);
+        cellar.enter(rat);
+        Critter frog = new Critter("frog", "a frog", 3.0, 5);
+        cellar.enter(frog);
+        frog.takeDamage(2);
+        Explorer explorer = new Explorer("doris", "a doris", 10);
+        tower.enter(explorer);
+        explorer.takeDamage(3);
+
+        String text = new File(dir, "built.map").getPath();
+        String binary = new File(dir, "built.bin").getPath();
+        String back = new File(dir, "back.map").getPath();
+        TestSupport.check(MapIO.saveMap(hall, text), "text save failed");
+        TestSupport.check(BinaryMapIO.saveMap(hall, binary),
+                "binary save failed");
+        TestSupport.check(BinaryMapIO.binaryToText(binary, back),
+                "binaryToText failed");
+        TestSupport.check(same(text, back), "binary map lost something");
+
+        Room[] playerRoom = new Room[1];
+        Object[] loaded = BinaryMapIO.loadMap(binary, playerRoom);
+        TestSupport.check(loaded != null && loaded[0] instanceof Explorer,
+                "player not loaded");
+        TestSupport.check(playerRoom[0] != null
+                && playerRoom[0].getDescription().equals("an empty room"),
+                "player's room not kept");
+        TestSupport.check(((Player) loaded[0]).getHealth() == 7,
+                "player health lost");
+    }
+
+    /**
+     * Convert a text map to binary and back twice; both trips must agree.
+     */
+    private static void converted(File map, File dir) throws Exception {
+        String binary = new File(dir, "a.bin").getPath();
+        String text = new File(dir, "a.map").getPath();
+        String binary2 = new File(dir, "b.bin").getPath();
+        String text2 = new File(dir, "b.map").getPath();
+        TestSupport.check(BinaryMapIO.textToBinary(map.getPath(), binary),
+                map + ": textToBinary failed");
+        TestSupport.check(BinaryMapIO.binaryToText(binary, text),
+                map + ": binaryToText failed");
+        TestSupport.check(BinaryMapIO.textToBinary(text, binary2),
+                map + ": second textToBinary failed");
+        TestSupport.check(BinaryMapIO.binaryToText(binary2, text2),
+                map + ": second binaryToText failed");
+        TestSupport.check(same(binary, binary2), map + ": binary maps differ");
+        TestSupport.check(same(text, text2), map + ": text maps differ");
+    }
+
+    /**
+     * Every cut short copy of a binary map, and one claiming far more
+     * strings than it holds, must load as null.
+     */
+    private static void corrupt(File dir) throws Exception {
+        File binary = new File(dir, "spiral.bin");
+        TestSupport.check(BinaryMapIO.textToBinary("maps/spiral.map",
+                binary.getPath()),
+                "textToBinary failed");
+        byte[] bytes = Files.readAllBytes(binary.toPath());
+        TestSupport.check(
+                bytes.length < new File("maps/spiral.map").length() / 2,
+                "binary spiral.map is not much smaller");
+        File cut = new File(dir, "cut.bin");
+        for (int length = 0; length < bytes.length; length++) {
+            Files.write(cut.toPath(), Arrays.copyOf(bytes, length));
+            TestSupport.check(BinaryMapIO.loadMap(cut.getPath()) == null,
+                    "map cut to " + length + " bytes loaded");
+        }
+        // magic, version, then a string count of 2^31 - 1
+        byte[] huge = {'C', 'R', 'W', 'B', 1, -1, -1, -1, -1, 7};
+        Files.write(cut.toPath(), huge);
+        TestSupport.check(BinaryMapIO.loadMap(cut.getPath()) == null,
+                "map with a huge string count loaded");
+    }
+
+    /**
+     * @return true if the two files hold the same bytes
+     */
+    private static boolean same(String a, String b) throws IOException {
+        return Arrays.equals(Files.readAllBytes(new File(a).toPath()),
+                Files.readAllBytes(new File(b).toPath()));
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.Set;
+
+/**
+ * Checks that {@link DescriptionIndex DescriptionIndex} answers word and
+ * prefix queries, and stays right as Things move between rooms and the
+ * player's inventory, as descriptions and health change, and as rooms are
+ * linked in; and that it stops changing once closed.
+ * <br />Build the game classes first, then:
+ * <pre>
+ * javac -cp classes -d classes test/*.java
+ * java -cp classes DescriptionIndexTest
+ * </pre>
+ */
+public class DescriptionIndexTest {
+
+    public static void main(String[] args) throws Exception {
+        Room hall = new Room("A draughty Hall");
+        Room cellar = new Room("a damp cellar");
+        Room.makeExitPair(hall, cellar, "South", "North");
+        Treasure coin = new Treasure("coin", 2.0);
+        Critter rat = new Critter("rat", "a hungry rat", 1.0, 5);
+        Explorer doris = new Explorer("doris", "a doris", 10);
+        hall.enter(coin);
+        cellar.enter(rat);
+        hall.enter(doris);
+        Treasure lamp = new Treasure("lamp", 3.0);
+        doris.add(lamp);
+
+        DescriptionIndex index = DescriptionIndex.build(hall, doris);
+        TestSupport.check(index.roomsWithWord("HALL").contains(hall),
+                "room by word");
+        TestSupport.check(index.roomsWithWord("hal").isEmpty(),
+                "room by part word");
+        TestSupport.check(index.roomsWithPrefix("d").size() == 2,
+                "rooms by prefix");
+        TestSupport.check(index.thingsWithWord("rat").contains(rat),
+                "thing by word");
+        TestSupport.check(index.thingsWithPrefix("hung").contains(rat),
+                "thing by long description");
+        TestSupport.check(index.roomOf(coin) == hall, "coin's room");
+        TestSupport.check(index.thingsWithWord("lamp").contains(lamp),
+                "carried thing");
+        TestSupport.check(index.roomOf(lamp) == null, "carried thing's room");
+
+        // Things moving
+        hall.leave(coin);
+        doris.add(coin);
+        TestSupport.check(index.roomOf(coin) == null
+                && index.thingsWithWord("coin").contains(coin),
+                "picked up coin");
+        doris.drop(lamp);
+        cellar.enter(lamp);
+        TestSupport.check(index.roomOf(lamp) == cellar, "dropped lamp's room");
+        cellar.leave(lamp);
+        TestSupport.check(index.thingsWithWord("lamp").isEmpty(),
+                "lamp left the map");
+
+        // descriptions changing with health; leaving afterwards must take
+        // the Thing out by the words it was indexed under
+        doris.takeDamage(3);
+        rat.takeDamage(5);
+        TestSupport.check(!rat.isAlive(), "rat should have fainted");
+        TestSupport.check(index.thingsWithWord("fainted").contains(rat),
+                "fainted rat");
+        TestSupport.check(index.thingsWithWord("hungry").contains(rat),
+                "fainted rat by old words");
+        TestSupport.check(hall.leave(doris), "doris could not leave");
+        TestSupport.check(index.thingsWithWord("doris").isEmpty(),
+                "doris left");
+        TestSupport.check(cellar.leave(rat), "fainted rat could not leave");
+        TestSupport.check(index.thingsWithWord("fainted").isEmpty()
+                && index.thingsWithWord("rat").isEmpty(), "rat left");
+        hall.enter(rat);
+        TestSupport.check(index.roomOf(rat) == hall, "rat back");
+
+        // rooms changing and linked in
+        cellar.setDescription("a flooded cellar");
+        TestSupport.check(index.roomsWithWord("damp").isEmpty()
+                && index.roomsWithWord("flooded").contains(cellar),
+                "changed description");
+        Room attic = new Room("a dusty attic");
+        Room loft = new Room("a loft");
+        attic.addExit("Up", loft);
+        loft.enter(new Treasure("chest", 50.0));
+        hall.addExit("Up", attic);
+        TestSupport.check(index.roomsWithWord("loft").contains(loft),
+                "linked room");
+        Thing chest = index.thingsWithWord("chest").iterator().next();
+        TestSupport.check(index.roomOf(chest) == loft,
+                "thing in linked room");
+
+        // closed
+        index.close();
+        Set<Room> flooded = index.roomsWithWord("flooded");
+        cellar.setDescription("a dry cellar");
+        TestSupport.check(flooded.contains(cellar)
+                && index.roomsWithWord("dry").isEmpty(),
+                "closed index changed");
+        rat.setAlive(true);
+        hall.leave(rat);
+        TestSupport.check(index.roomOf(rat) == hall,
+                "closed index followed the rat");
+        System.out.println("DescriptionIndexTest passed");
+    }
+}
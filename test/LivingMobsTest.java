@@ -0,0 +1,87 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that {@link Room#leave(Thing) Room.leave} keeps trapping an
+ * Explorer exactly when a living Critter is in the room, while Critters
+ * faint, are revived, leave and come back in random order, in rooms small
+ * enough to be scanned and large enough to be indexed.
+ * <br />Build the game classes first, then:
+ * <pre>
+ * javac -cp classes -d classes test/*.java
+ * java -cp classes LivingMobsTest
+ * </pre>
+ */
+public class LivingMobsTest {
+
+    public static void main(String[] args) {
+        for (int seed = 0; seed < 20; seed++) {
+            shuffled(seed, 4);
+            shuffled(seed, 40);
+        }
+        System.out.println("LivingMobsTest passed");
+    }
+
+    /**
+     * Change a room's Critters at random, trying to leave in between.
+     *
+     * @param seed Seed of the changes
+     * @param count Number of Critters
+     */
+    private static void shuffled(int seed, int count) {
+        Random random = new Random(seed);
+        Room room = new Room("an arena");
+        Room outside = new Room("outside");
+        List<Critter> critters = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Critter critter = new Critter("rat", "a rat", 1.0, 3);
+            critters.add(critter);
+            if (random.nextBoolean()) {
+                critter.takeDamage(3);
+            }
+            room.enter(critter);
+        }
+        Explorer doris = new Explorer("doris", "a doris", 10);
+        for (int step = 0; step < 2000; step++) {
+            Critter critter = critters.get(random.nextInt(count));
+            switch (random.nextInt(4)) {
+            case 0:
+                critter.takeDamage(3);
+                break;
+            case 1:
+                critter.setAlive(true);
+                break;
+            case 2:
+                if (room.getContents().contains(critter)) {
+                    TestSupport.check(room.leave(critter),
+                            "critter trapped");
+                    outside.enter(critter);
+                } else {
+                    outside.leave(critter);
+                    room.enter(critter);
+                }
+                break;
+            default:
+                room.enter(doris);
+                boolean trapped = false;
+                for (Thing thing : room.getContents()) {
+                    trapped |= thing instanceof Critter
+                            && ((Critter) thing).isAlive();
+                }
+                TestSupport.check(room.leave(doris) != trapped, "step "
+                        + step + ": explorer "
+                        + (trapped ? "let out" : "trapped"));
+                if (trapped) {
+                    // take it out past the rats for the next try
+                    for (Critter other : critters) {
+                        other.setAlive(false);
+                    }
+                    TestSupport.check(room.leave(doris),
+                            "explorer trapped by fainted rats");
+                }
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Checks that {@link MapJournal MapJournal} gives back the map as it was at
+ * the last save: after saves of every kind of change, after a compaction,
+ * and when a segment of an earlier snapshot of the same filename has been
+ * left behind (which must be ignored). Changes made after the last save
+ * must be lost, and replaying must not count as changing the rooms. A map
+ * saved without a journal must not open as one, nor gain journal files.
+ * <br />Build the game classes first, then:
+ * <pre>
+ * javac -cp classes -d classes test/*.java
+ * java -cp classes MapJournalTest
+ * </pre>
+ */
+public class MapJournalTest {
+
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("journal").toFile();
+        try {
+            String filename = new File(dir, "level.map").getPath();
+            plain(filename, dir);
+            replayed(filename);
+            compacted(filename);
+            stale(filename, dir);
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+        System.out.println("MapJournalTest passed");
+    }
+
+    /**
+     * Open a map saved without a journal.
+     */
+    private static void plain(String filename, File dir) throws Exception {
+        Room[] rooms = grid(2);
+        Player player = new Explorer("doris", "a doris", 10);
+        rooms[1].enter(player);
+        TestSupport.check(MapIO.saveMap(rooms[0], filename),
+                "plain save failed");
+        TestSupport.check(MapJournal.open(filename) == null,
+                "plain map opened as a journal");
+        TestSupport.check(dir.list().length == 1,
+                "opening a plain map wrote files");
+        TestSupport.check(new File(filename).delete(), "delete failed");
+    }
+
+    /**
+     * Save changes of each kind, then make one more which is not saved.
+     */
+    private static void replayed(String filename) throws Exception {
+        Room[] rooms = grid(3);
+        Player player = new Explorer("doris", "a doris", 10);
+        rooms[3].enter(player);
+        MapJournal journal = MapJournal.create(rooms[0], player, filename);
+        TestSupport.check(journal != null, "create failed");
+
+        Treasure coin = (Treasure) rooms[1].getContents().get(0);
+        rooms[1].leave(coin);
+        player.add(coin);
+        Room attic = new Room("an attic");
+        rooms[8].addExit("Up", attic);
+        attic.enter(new Treasure("map", 9.0));
+        TestSupport.check(journal.save(), "first save failed");
+
+        rooms[3].removeExit("East");
+        rooms[2].setDescription("a scorched room");
+        Critter rat = (Critter) rooms[6].getContents().get(0);
+        rat.takeDamage(2);
+        player.takeDamage(4);
+        player.drop(coin);
+        rooms[7].enter(coin);
+        TestSupport.check(journal.save(), "second save failed");
+        String expected = text(rooms[0], player, rooms[3], filename);
+
+        rooms[6].setDescription("never saved");
+        player.takeDamage(1);
+        journal.close();
+
+        MapJournal opened = MapJournal.open(filename);
+        TestSupport.check(opened != null, "open failed");
+        for (Room room : TestSupport.walkOrder(opened.getStartRoom())) {
+            TestSupport.check(room.getGeneration() == 0 && !room.isDirty(),
+                    "room changed by replaying");
+        }
+        TestSupport.check(text(opened.getStartRoom(), null, null, filename)
+                .equals(expected), "replayed map differs");
+        TestSupport.check(opened.getPlayer().getHealth() == 6,
+                "player health wrong");
+        TestSupport.check(opened.getPlayer().getContents().isEmpty(),
+                "player inventory wrong");
+        opened.close();
+    }
+
+    /**
+     * Save enough to compact, then open the merged snapshot.
+     */
+    private static void compacted(String filename) throws Exception {
+        MapJournal journal = MapJournal.open(filename);
+        TestSupport.check(journal != null, "open failed");
+        Room start = journal.getStartRoom();
+        Room next = start.getExit(Direction.EAST);
+        Treasure gem = new Treasure("gem", 1.0);
+        start.enter(gem);
+        for (int i = 0; i < 2000; i++) {
+            Room from = (i % 2 == 0) ? start : next;
+            Room to = (i % 2 == 0) ? next : start;
+            from.leave(gem);
+            to.enter(gem);
+            TestSupport.check(journal.save(), "save " + i + " failed");
+        }
+        journal.compact();
+        next.setDescription("after the compaction started");
+        TestSupport.check(journal.save(), "save after compaction failed");
+        String expected = text(start, null, null, filename);
+        journal.close();
+        TestSupport.check(segments(filename) <= 2, segments(filename)
+                + " segments left after compaction");
+
+        MapJournal opened = MapJournal.open(filename);
+        TestSupport.check(opened != null, "open after compaction failed");
+        TestSupport.check(text(opened.getStartRoom(), null, null, filename)
+                .equals(expected), "compacted map differs");
+        opened.close();
+    }
+
+    /**
+     * Start a new map under the same filename, then put back a segment of
+     * the old one.
+     */
+    private static void stale(String filename, File dir) throws Exception {
+        MapJournal old = MapJournal.open(filename);
+        TestSupport.check(old != null, "open failed");
+        old.getStartRoom().setDescription("from the old map");
+        TestSupport.check(old.save(), "save failed");
+        old.close();
+        File[] segments = segmentFiles(filename);
+        TestSupport.check(segments.length > 0, "no segment saved");
+        File kept = new File(dir, "kept");
+        Files.copy(segments[segments.length - 1].toPath(), kept.toPath());
+
+        Room[] rooms = grid(2);
+        Player player = new Explorer("eve", "an eve", 10);
+        rooms[1].enter(player);
+        MapJournal journal = MapJournal.create(rooms[0], player, filename);
+        TestSupport.check(journal != null, "create over old map failed");
+        journal.close();
+        String expected = text(rooms[0], player, rooms[1], filename);
+        TestSupport.check(segments(filename) == 0, "old segments not deleted");
+        Files.move(kept.toPath(), segments[0].toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+
+        MapJournal opened = MapJournal.open(filename);
+        TestSupport.check(opened != null, "open with a stale segment failed");
+        TestSupport.check(text(opened.getStartRoom(), null, null, filename)
+                .equals(expected), "stale segment was replayed");
+        opened.close();
+    }
+
+    /**
+     * @param side Side of the square
+     * @return rooms of a square grid, row by row, each with a Thing
+     */
+    private static Room[] grid(int side) throws Exception {
+        Room[] rooms = TestSupport.grid(TestSupport.rooms(side * side), side);
+        for (int i = 0; i < rooms.length; i++) {
+            if (i % 2 == 0) {
+                rooms[i].enter(new Critter("rat", "a rat", 1.0, 5));
+            } else {
+                rooms[i].enter(new Treasure("coin", i));
+            }
+        }
+        return rooms;
+    }
+
+    /**
+     * The map as text, without the player (an opened journal's player is
+     * not in any room).
+     *
+     * @param root Start room
+     * @param player Player to take out while saving (may be null)
+     * @param room Room the player is in (which must let it leave)
+     * @param filename Snapshot filename, next to which the text is written
+     */
+    private static String text(Room root, Player player, Room room,
+            String filename) throws IOException {
+        if (player != null) {
+            TestSupport.check(room.leave(player), "player could not leave");
+        }
+        File file = new File(filename + ".text");
+        TestSupport.check(MapIO.saveMap(root, file.getPath()),
+                "text save failed");
+        if (player != null) {
+            room.enter(player);
+        }
+        String text = new String(Files.readAllBytes(file.toPath()));
+        file.delete();
+        return text;
+    }
+
+    /**
+     * @return the journal segments of a snapshot, oldest first
+     */
+    private static File[] segmentFiles(String filename) {
+        File snapshot = new File(filename);
+        String prefix = snapshot.getName() + ".journal.";
+        File[] files = snapshot.getAbsoluteFile().getParentFile().listFiles(
+                (parent, name) -> name.startsWith(prefix));
+        Arrays.sort(files, (a, b) -> Integer.compare(
+                Integer.parseInt(a.getName().substring(prefix.length())),
+                Integer.parseInt(b.getName().substring(prefix.length()))));
+        return files;
+    }
+
+    /**
+     * @return number of journal segments of a snapshot
+     */
+    private static int segments(String filename) {
+        return segmentFiles(filename).length;
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Checks that the loaders reading through {@link MapScanner MapScanner}
+ * accept the same line endings as {@link MapIO#loadMap(String) loadMap}:
+ * each map in maps/, rewritten with "\r\n" and with lone "\r" line ends,
+ * must load as the same map through loadMap, loadMapMapped,
+ * loadMapParallel and loadMapLazy.
+ * <br />Build the game classes first, then from the top of the project:
+ * <pre>
+ * javac -cp classes -d classes test/*.java
+ * java -cp classes MapScannerTest
+ * </pre>
+ */
+public class MapScannerTest {
+
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("scanner").toFile();
+        try {
+            for (File map : new File("maps").listFiles()) {
+                if (map.getName().endsWith(".map")) {
+                    String expected = text(MapIO.loadMap(map.getPath()), dir);
+                    for (String ending : new String[] {"\r\n", "\r"}) {
+                        endings(map, ending, expected, dir);
+                    }
+                }
+            }
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+        System.out.println("MapScannerTest passed");
+    }
+
+    /**
+     * Rewrite a map with other line ends and load it every way.
+     */
+    private static void endings(File map, String ending, String expected,
+            File dir) throws Exception {
+        String name = map.getName() + (ending.length() == 1 ? " (CR)"
+                : " (CRLF)");
+        String original = new String(Files.readAllBytes(map.toPath()),
+                StandardCharsets.UTF_8);
+        File copy = new File(dir, "copy.map");
+        Files.write(copy.toPath(), original.replace("\n", ending)
+                .getBytes(StandardCharsets.UTF_8));
+        String path = copy.getPath();
+        TestSupport.check(text(MapIO.loadMap(path), dir).equals(expected),
+                name + ": loadMap differs");
+        TestSupport.check(text(MapIO.loadMapMapped(path), dir)
+                .equals(expected), name + ": loadMapMapped differs");
+        TestSupport.check(text(MapIO.loadMapParallel(path), dir)
+                .equals(expected), name + ": loadMapParallel differs");
+        TestSupport.check(text(MapIO.loadMapLazy(path, 1, 1000), dir)
+                .equals(expected), name + ": loadMapLazy differs");
+    }
+
+    /**
+     * @param loaded Result of a load
+     * @return the loaded map saved as text
+     */
+    private static String text(Object[] loaded, File dir) throws Exception {
+        TestSupport.check(loaded != null, "map not loaded");
+        File file = new File(dir, "saved.map");
+        TestSupport.check(MapIO.saveMap((Room) loaded[1], file.getPath()),
+                "save failed");
+        return new String(Files.readAllBytes(file.toPath()),
+                StandardCharsets.UTF_8);
+    }
+}
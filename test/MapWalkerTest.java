@@ -0,0 +1,204 @@
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that {@link MapWalker MapWalker} visits every reachable room once,
+ * breadth first in exit order, that its queue never holds more rooms than
+ * the map has however many exits lead to each room, and that subclasses
+ * ({@link BoundsMapper BoundsMapper} and one here) keep working through
+ * visit, reset and hasVisited.
+ * <br />Build the game classes first, then:
+ * <pre>
+ * javac -cp classes -d classes test/*.java
+ * java -cp classes MapWalkerTest
+ * </pre>
+ */
+public class MapWalkerTest {
+
+    public static void main(String[] args) throws Exception {
+        dense();
+        grid();
+        chain();
+        System.out.println("MapWalkerTest passed");
+    }
+
+    /**
+     * Every room has an exit to every other room.
+     */
+    private static void dense() throws Exception {
+        Room[] rooms = TestSupport.rooms(60);
+        for (Room room : rooms) {
+            for (int j = rooms.length - 1; j >= 0; j--) {
+                if (rooms[j] != room) {
+                    room.addExit("to " + j, rooms[j]);
+                }
+            }
+        }
+        Room away = new Room("not reachable");
+        away.addExit("in", rooms[0]);
+
+        Recorder walker = new Recorder(rooms[0]);
+        walker.walk();
+        TestSupport.check(walker.seen.equals(expected(rooms[0])),
+                "dense order wrong");
+        TestSupport.check(walker.largestQueue <= rooms.length, "queue held "
+                + walker.largestQueue + " rooms for " + rooms.length);
+        for (Room room : rooms) {
+            TestSupport.check(walker.hasVisited(room), "room not visited");
+        }
+        TestSupport.check(!walker.hasVisited(away), "unreachable room visited");
+
+        // a second walk starts again
+        walker.walk();
+        TestSupport.check(walker.resets == 2, "reset not called by walk");
+        TestSupport.check(walker.seen.size() == rooms.length,
+                "second walk differs");
+    }
+
+    /**
+     * A grid with a hole, laid out by BoundsMapper.
+     */
+    private static void grid() throws Exception {
+        int side = 5;
+        Room[] rooms = TestSupport.grid(TestSupport.rooms(side * side), side);
+        // cut the middle room off
+        Room hole = rooms[2 * side + 2];
+        for (Direction direction : Direction.values()) {
+            hole.getExit(direction).removeExit(direction.opposite().label());
+            hole.removeExit(direction.label());
+        }
+        Room start = rooms[2 * side + 1];
+        BoundsMapper mapper = new BoundsMapper(start);
+        mapper.walk();
+        TestSupport.check(mapper.roomCount() == rooms.length - 1,
+                "rooms laid out");
+        TestSupport.check(mapper.xMin == -1 && mapper.xMax == 3
+                && mapper.yMin == -2 && mapper.yMax == 2, "bounds wrong");
+        for (int i = 0; i < rooms.length; i++) {
+            if (i == 2 * side + 2) {
+                TestSupport.check(!mapper.coords.containsKey(rooms[i]),
+                        "hole placed");
+                continue;
+            }
+            TestSupport.check(mapper.getX(rooms[i]) == i % side - 1
+                    && mapper.getY(rooms[i]) == i / side - 2,
+                    "room " + i + " misplaced");
+        }
+        Recorder walker = new Recorder(start);
+        walker.walk();
+        List<Room> laidOut = new ArrayList<>();
+        for (int i = 0; i < mapper.roomCount(); i++) {
+            laidOut.add(mapper.getRoom(i));
+        }
+        TestSupport.check(laidOut.equals(walker.seen),
+                "BoundsMapper order differs");
+        TestSupport.check(walker.seen.equals(expected(start)),
+                "grid order wrong");
+
+        // coords can still be changed as a Map
+        mapper.coords.put(hole, new Pair(7, 8));
+        TestSupport.check(mapper.getX(hole) == 7 && mapper.getY(hole) == 8
+                && mapper.coords.get(hole).equals(new Pair(7, 8))
+                && mapper.roomCount() == rooms.length,
+                "put through coords lost");
+        mapper.coords.put(start, new Pair(-5, 0));
+        TestSupport.check(mapper.getX(start) == -5
+                && mapper.roomCount() == rooms.length,
+                "moving a room through coords failed");
+        TestSupport.check(mapper.coords.remove(hole).equals(new Pair(7, 8))
+                && !mapper.coords.containsKey(hole)
+                && mapper.coords.size() == rooms.length - 1,
+                "remove through coords failed");
+        for (Map.Entry<Room, Pair> entry : mapper.coords.entrySet()) {
+            entry.setValue(new Pair(entry.getValue().x, 0));
+        }
+        TestSupport.check(mapper.getY(rooms[0]) == 0, "setValue lost");
+        mapper.coords.keySet().remove(start);
+        TestSupport.check(!mapper.coords.containsKey(start)
+                && mapper.roomCount() == rooms.length - 2,
+                "keySet remove failed");
+        mapper.coords.clear();
+        TestSupport.check(mapper.coords.isEmpty() && mapper.roomCount() == 0
+                && !mapper.coords.containsKey(rooms[0]), "clear failed");
+    }
+
+    /**
+     * A long corridor of rooms.
+     */
+    private static void chain() throws Exception {
+        Room[] rooms = TestSupport.grid(TestSupport.rooms(200_000), 200_000);
+        Recorder walker = new Recorder(rooms[0]);
+        walker.walk();
+        TestSupport.check(walker.seen.equals(Arrays.asList(rooms)),
+                "chain order wrong");
+        TestSupport.check(walker.largestQueue <= 1, "chain queue held "
+                + walker.largestQueue + " rooms");
+    }
+
+    /**
+     * @return rooms reachable from start, breadth first in exit order
+     */
+    private static List<Room> expected(Room start) {
+        Map<Room, Boolean> seen = new IdentityHashMap<>();
+        List<Room> order = new ArrayList<>();
+        ArrayDeque<Room> todo = new ArrayDeque<>();
+        seen.put(start, true);
+        todo.add(start);
+        while (!todo.isEmpty()) {
+            Room room = todo.removeFirst();
+            order.add(room);
+            for (Room exit : room.getExits().values()) {
+                if (seen.put(exit, true) == null) {
+                    todo.add(exit);
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Records the rooms visited, the resets, and the most rooms queued.
+     */
+    private static class Recorder extends MapWalker {
+        // Rooms visited by the last walk, in order
+        private final List<Room> seen = new ArrayList<>();
+        // Number of calls to reset
+        private int resets;
+        // Most rooms waiting in the queue when a room was visited
+        private int largestQueue;
+        // The walker's queue (private to MapWalker)
+        private final Field queue;
+
+        Recorder(Room start) throws Exception {
+            super(start);
+            queue = MapWalker.class.getDeclaredField("toVisit");
+            queue.setAccessible(true);
+        }
+
+        @Override
+        protected void reset() {
+            super.reset();
+            seen.clear();
+            resets++;
+        }
+
+        @Override
+        protected void visit(Room room) {
+            TestSupport.check(hasVisited(room),
+                    "room not visited when visit called");
+            seen.add(room);
+            try {
+                largestQueue = Math.max(largestQueue,
+                        ((Collection<?>) queue.get(this)).size());
+            } catch (IllegalAccessException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}
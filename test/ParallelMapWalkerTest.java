@@ -0,0 +1,83 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks that {@link ParallelMapWalker ParallelMapWalker} finds exactly
+ * the rooms {@link MapWalker MapWalker} finds, each once, with a visit
+ * callback, with accumulators and as a list; and that in ordered mode the
+ * rooms and the merged accumulators come out in MapWalker's order. Maps
+ * are large enough for levels to be split into several chunks.
+ * <br />Build the game classes first, then:
+ * <pre>
+ * javac -cp classes -d classes test/*.java
+ * java -cp classes ParallelMapWalkerTest
+ * </pre>
+ */
+public class ParallelMapWalkerTest {
+
+    public static void main(String[] args) throws Exception {
+        ForkJoinPool[] pools = {new ForkJoinPool(1), new ForkJoinPool(4)};
+        try {
+            for (int seed = 0; seed < 4; seed++) {
+                Room start = TestSupport.randomMap(new Random(seed), 30_000);
+                List<Room> expected = TestSupport.walkOrder(start);
+                for (ForkJoinPool pool : pools) {
+                    walkEveryWay(start, expected, pool);
+                }
+            }
+            Room single = new Room("alone");
+            TestSupport.check(new ParallelMapWalker(single).walk().size()
+                    == 1, "single room");
+        } finally {
+            for (ForkJoinPool pool : pools) {
+                pool.shutdown();
+            }
+        }
+        System.out.println("ParallelMapWalkerTest passed");
+    }
+
+    /**
+     * Walk one map every way with one pool.
+     *
+     * @param expected Rooms in MapWalker order
+     */
+    private static void walkEveryWay(Room start, List<Room> expected,
+            ForkJoinPool pool) {
+        ParallelMapWalker ordered = new ParallelMapWalker(start, pool, true);
+        TestSupport.check(ordered.walk().equals(expected),
+                "ordered walk differs");
+        List<Room> merged = ordered.walk(ArrayList::new, List::add,
+                (a, b) -> {
+                    a.addAll(b);
+                    return a;
+                });
+        TestSupport.check(merged.equals(expected),
+                "ordered accumulators differ");
+
+        ParallelMapWalker unordered =
+                new ParallelMapWalker(start, pool, false);
+        TestSupport.check(TestSupport.sameRooms(unordered.walk(), expected),
+                "unordered walk");
+        Map<Room, Integer> counts = new ConcurrentHashMap<>();
+        unordered.walk(room -> counts.merge(room, 1, Integer::sum));
+        TestSupport.check(counts.size() == expected.size(),
+                "visit missed rooms");
+        for (Room room : expected) {
+            TestSupport.check(counts.get(room) == 1, "room visited "
+                    + counts.get(room) + " times");
+            TestSupport.check(unordered.hasVisited(room),
+                    "hasVisited false");
+        }
+        List<Room> gathered = unordered.walk(ArrayList::new, List::add,
+                (a, b) -> {
+                    a.addAll(b);
+                    return a;
+                });
+        TestSupport.check(TestSupport.sameRooms(gathered, expected),
+                "unordered accumulators");
+    }
+}
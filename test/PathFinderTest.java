@@ -0,0 +1,162 @@
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that {@link PathFinder PathFinder} keeps giving right routes while
+ * exits are added to and removed from a grid of rooms: every route must
+ * really lead from one room to the other, routes found breadth first must
+ * be as short as a search without the cache finds, and there must be a
+ * route exactly when the uncached search finds one. Changing an exit far
+ * from a cached route must keep it cached.
+ * <br />Build the game classes first, then:
+ * <pre>
+ * javac -cp classes -d classes test/*.java
+ * java -cp classes PathFinderTest
+ * </pre>
+ */
+public class PathFinderTest {
+
+    // Side of the square grid
+    private static final int SIDE = 8;
+    // Directions exits are made in
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    public static void main(String[] args) throws Exception {
+        for (int seed = 0; seed < 20; seed++) {
+            changes(seed, false);
+            changes(seed, true);
+        }
+        kept();
+        System.out.println("PathFinderTest passed");
+    }
+
+    /**
+     * Change a grid at random, asking for routes in between.
+     *
+     * @param seed Seed of the changes
+     * @param jumps Also add exits which do not move one step
+     */
+    private static void changes(int seed, boolean jumps) throws Exception {
+        Random random = new Random(seed);
+        Room[] rooms = TestSupport.grid(TestSupport.rooms(SIDE * SIDE), SIDE);
+        // take out about a third of the doors
+        for (Room room : rooms) {
+            for (Direction direction : new Direction[] {Direction.EAST,
+                    Direction.SOUTH}) {
+                Room next = room.getExit(direction);
+                if (next != null && random.nextInt(3) == 0) {
+                    room.removeExit(direction.label());
+                    next.removeExit(direction.opposite().label());
+                }
+            }
+        }
+        PathFinder cached = new PathFinder(rooms[0], 50);
+        for (int round = 0; round < 300; round++) {
+            for (int i = 0; i < 10; i++) {
+                Room from = rooms[random.nextInt(rooms.length)];
+                Room to = rooms[random.nextInt(rooms.length)];
+                compare(cached, from, to);
+            }
+            change(rooms, random, jumps);
+        }
+        cached.close();
+    }
+
+    /**
+     * Change exits away from a cached route on an open grid.
+     */
+    private static void kept() throws Exception {
+        Room[] rooms = TestSupport.grid(TestSupport.rooms(SIDE * SIDE), SIDE);
+        PathFinder finder = new PathFinder(rooms[0], 10);
+        // along the top row
+        List<String> aStar = finder.findPath(rooms[0], rooms[3]);
+        List<String> breadthFirst =
+                finder.findPathBreadthFirst(rooms[0], rooms[3]);
+        Room corner = rooms[SIDE * SIDE - 1];
+        corner.removeExit("North");
+        TestSupport.check(finder.findPath(rooms[0], rooms[3]) == aStar
+                && finder.findPathBreadthFirst(rooms[0], rooms[3])
+                == breadthFirst, "route dropped for a removed exit");
+        corner.addExit("North", rooms[SIDE * SIDE - 1 - SIDE]);
+        TestSupport.check(finder.findPath(rooms[0], rooms[3]) == aStar
+                && finder.findPathBreadthFirst(rooms[0], rooms[3])
+                == breadthFirst,
+                "route dropped for an exit which can not shorten it");
+        // an exit which is not a step says nothing about distances
+        Room attic = new Room("attic");
+        corner.addExit("Up", attic);
+        TestSupport.check(finder.findPath(rooms[0], rooms[3]) != aStar,
+                "route kept after an exit which is not a step");
+        TestSupport.check(finder.findPath(rooms[0], attic) != null,
+                "new room not reached");
+        finder.close();
+    }
+
+    /**
+     * Add or remove one exit.
+     */
+    private static void change(Room[] rooms, Random random, boolean jumps)
+            throws Exception {
+        int x = random.nextInt(SIDE);
+        int y = random.nextInt(SIDE);
+        Room room = rooms[y * SIDE + x];
+        Direction direction = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+        if (room.getExit(direction) != null) {
+            room.removeExit(direction.label());
+            return;
+        }
+        if (jumps && random.nextInt(10) == 0) {
+            if (random.nextBoolean()) {
+                room.addExit(direction.label(),
+                        rooms[random.nextInt(rooms.length)]);
+            } else if (!room.getExits().containsKey("Up")) {
+                room.addExit("Up", rooms[random.nextInt(rooms.length)]);
+            }
+            return;
+        }
+        int nx = x + direction.dx();
+        int ny = y + direction.dy();
+        if (nx >= 0 && nx < SIDE && ny >= 0 && ny < SIDE) {
+            room.addExit(direction.label(), rooms[ny * SIDE + nx]);
+        }
+    }
+
+    /**
+     * Compare the routes of a caching finder with those of a new one.
+     */
+    private static void compare(PathFinder cached, Room from, Room to) {
+        PathFinder fresh = new PathFinder(from, 0);
+        List<String> expected = fresh.findPathBreadthFirst(from, to);
+        fresh.close();
+        List<String> breadthFirst = cached.findPathBreadthFirst(from, to);
+        List<String> aStar = cached.findPath(from, to);
+        if (expected == null) {
+            TestSupport.check(breadthFirst == null && aStar == null,
+                    "route to nowhere");
+            return;
+        }
+        TestSupport.check(breadthFirst != null && aStar != null,
+                "route missed");
+        TestSupport.check(breadthFirst.size() == expected.size(),
+                "breadth first route " + breadthFirst + " longer than "
+                + expected);
+        TestSupport.check(follow(from, breadthFirst) == to,
+                "breadth first route wrong");
+        TestSupport.check(follow(from, aStar) == to, "A* route wrong");
+    }
+
+    /**
+     * @return room reached by following labels from from (null if an exit
+     *         is missing)
+     */
+    private static Room follow(Room from, List<String> labels) {
+        Room room = from;
+        for (String label : labels) {
+            room = room.getExits().get(label);
+            if (room == null) {
+                return null;
+            }
+        }
+        return room;
+    }
+}
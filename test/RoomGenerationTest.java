@@ -0,0 +1,59 @@
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Checks that loading a map is not counted as changing it: every room of a
+ * map read by each loader must be at generation 0 and clean, and the
+ * first real change must still bump the generation and set the flag.
+ * <br />Build the game classes first, then from the top of the project:
+ * <pre>
+ * javac -cp classes -d classes test/*.java
+ * java -cp classes RoomGenerationTest
+ * </pre>
+ */
+public class RoomGenerationTest {
+
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("generation").toFile();
+        try {
+            String text = "maps/box.map";
+            String binary = new File(dir, "box.bin").getPath();
+            String serial = new File(dir, "box.ser").getPath();
+            TestSupport.check(BinaryMapIO.textToBinary(text, binary),
+                    "textToBinary failed");
+            Room start = (Room) MapIO.loadMap(text)[1];
+            TestSupport.check(MapIO.serializeMap(start, serial),
+                    "serializeMap failed");
+
+            clean(start, "loadMap");
+            clean((Room) MapIO.loadMapMapped(text)[1], "loadMapMapped");
+            clean((Room) MapIO.loadMapParallel(text)[1], "loadMapParallel");
+            clean((Room) MapIO.loadMapLazy(text, 1, 1000)[1], "loadMapLazy");
+            clean((Room) BinaryMapIO.loadMap(binary)[1],
+                    "BinaryMapIO.loadMap");
+            clean(MapIO.deserializeMap(serial), "deserializeMap");
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+        System.out.println("RoomGenerationTest passed");
+    }
+
+    /**
+     * @param start Start room of a loaded map
+     * @param loader Name of the loader, for messages
+     */
+    private static void clean(Room start, String loader) {
+        TestSupport.check(start != null, loader + " failed");
+        for (Room room : TestSupport.walkOrder(start)) {
+            TestSupport.check(room.getGeneration() == 0 && !room.isDirty(),
+                    loader + ": \"" + room.getDescription()
+                    + "\" changed by loading");
+        }
+        start.setDescription("changed");
+        TestSupport.check(start.getGeneration() == 1 && start.isDirty(),
+                loader + ": change not counted");
+    }
+}
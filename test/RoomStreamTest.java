@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Checks the lazy views of the rooms reachable from a start room,
+ * {@link MapWalker#stream(Room) MapWalker.stream} and
+ * {@link MapWalker#iterator(Room) MapWalker.iterator}: sequentially they
+ * give the rooms in MapWalker's order, a short-circuiting query only
+ * looks at the exits of the rooms it had to reach, and a parallel stream
+ * gives every room exactly once.
+ * <br />Build the game classes first, then:
+ * <pre>
+ * javac -cp classes -d classes test/*.java
+ * java -cp classes RoomStreamTest
+ * </pre>
+ */
+public class RoomStreamTest {
+
+    // Rooms whose exits have been looked at
+    private static final AtomicInteger EXPANDED = new AtomicInteger();
+
+    /**
+     * Counts the times its exits are looked at.
+     */
+    private static class CountingRoom extends Room {
+        private static final long serialVersionUID = 1L;
+
+        CountingRoom(String description) {
+            super(description);
+        }
+
+        @Override
+        public void forEachExit(
+                BiConsumer<? super String, ? super Room> action) {
+            EXPANDED.incrementAndGet();
+            super.forEachExit(action);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Room start = TestSupport.randomMap(new Random(1), 20_000);
+        List<Room> expected = TestSupport.walkOrder(start);
+
+        TestSupport.check(MapWalker.stream(start)
+                .collect(Collectors.toList()).equals(expected),
+                "stream order differs");
+        List<Room> iterated = new ArrayList<>();
+        Iterator<Room> rooms = MapWalker.iterator(start);
+        while (rooms.hasNext()) {
+            iterated.add(rooms.next());
+        }
+        TestSupport.check(iterated.equals(expected),
+                "iterator order differs");
+        try {
+            rooms.next();
+            TestSupport.check(false, "iterator went past the end");
+        } catch (NoSuchElementException ex) {
+            // expected
+        }
+        TestSupport.check(MapWalker.stream(start).limit(5)
+                .collect(Collectors.toList())
+                .equals(expected.subList(0, 5)), "limit differs");
+
+        for (int i = 0; i < 5; i++) {
+            List<Room> parallel = MapWalker.stream(start).parallel()
+                    .collect(Collectors.toList());
+            TestSupport.check(TestSupport.sameRooms(parallel, expected),
+                    "parallel stream rooms");
+            TestSupport.check(MapWalker.stream(start).parallel().count()
+                    == expected.size(), "parallel count");
+        }
+
+        shortCircuit();
+        System.out.println("RoomStreamTest passed");
+    }
+
+    /**
+     * Find the first room with a living Critter along a long corridor.
+     */
+    private static void shortCircuit() throws Exception {
+        Room[] rooms = new Room[100_000];
+        for (int i = 0; i < rooms.length; i++) {
+            rooms[i] = new CountingRoom("room " + i);
+        }
+        TestSupport.grid(rooms, rooms.length);
+        rooms[10].enter(new Critter("rat", "a rat", 1.0, 5));
+        rooms[50_000].enter(new Critter("bat", "a bat", 1.0, 5));
+
+        EXPANDED.set(0);
+        Optional<Room> found = MapWalker.stream(rooms[0])
+                .filter(RoomStreamTest::hasLivingCritter).findFirst();
+        TestSupport.check(found.isPresent() && found.get() == rooms[10],
+                "wrong lair");
+        TestSupport.check(EXPANDED.get() <= 11, EXPANDED.get()
+                + " rooms expanded to find the first lair");
+
+        EXPANDED.set(0);
+        TestSupport.check(MapWalker.stream(rooms[0]).parallel()
+                .anyMatch(RoomStreamTest::hasLivingCritter), "no lair");
+        TestSupport.check(EXPANDED.get() < rooms.length,
+                "parallel anyMatch walked it all");
+    }
+
+    /**
+     * @return true if a living Critter is in room
+     */
+    private static boolean hasLivingCritter(Room room) {
+        for (Thing thing : room.getContents()) {
+            if (thing instanceof Critter && ((Critter) thing).isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
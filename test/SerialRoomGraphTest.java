@@ -0,0 +1,106 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+/**
+ * Checks that a serialized {@link Room Room} comes back through
+ * {@link SerialRoomGraph SerialRoomGraph} with its exits and contents: a
+ * corridor far longer than default serialization could follow, and kinds
+ * of Thing the graph has no record for, which must keep everything they
+ * hold, in a room or carried by the player.
+ * <br />Build the game classes first, then:
+ * <pre>
+ * javac -cp classes -d classes test/*.java
+ * java -cp classes SerialRoomGraphTest
+ * </pre>
+ */
+public class SerialRoomGraphTest {
+
+    public static void main(String[] args) throws Exception {
+        corridor();
+        otherThings();
+        System.out.println("SerialRoomGraphTest passed");
+    }
+
+    /**
+     * A corridor of rooms with a coin at the far end.
+     */
+    private static void corridor() throws Exception {
+        Room[] rooms = TestSupport.grid(TestSupport.rooms(200_000), 200_000);
+        rooms[rooms.length - 1].enter(new Treasure("coin", 2.5));
+        Room back = copy(rooms[0]);
+        List<Room> order = TestSupport.walkOrder(back);
+        TestSupport.check(order.size() == rooms.length, "rooms lost");
+        for (int i = 0; i < rooms.length; i++) {
+            TestSupport.check(order.get(i).getDescription()
+                    .equals(rooms[i].getDescription()), "room " + i
+                    + " differs");
+        }
+        Room last = order.get(order.size() - 1);
+        TestSupport.check(last.getExit(Direction.WEST)
+                == order.get(order.size() - 2), "exit back lost");
+        TestSupport.check(last.getContents().get(0).repr()
+                .equals("$;2.50000;coin"), "coin lost");
+    }
+
+    /**
+     * A Thing the graph does not know, alone and in an inventory.
+     */
+    private static void otherThings() throws Exception {
+        Room hall = new Room("a hall");
+        Room cellar = new Room("a cellar");
+        Room.makeExitPair(hall, cellar, "South", "North");
+        hall.enter(new Lamp(true));
+        Explorer doris = new Explorer("doris", "a doris", 10);
+        doris.add(new Lamp(false));
+        cellar.enter(doris);
+
+        Room back = copy(hall);
+        Thing lamp = back.getContents().get(0);
+        TestSupport.check(lamp instanceof Lamp && ((Lamp) lamp).lit,
+                "lamp in the hall lost");
+        Room cellarBack = back.getExit(Direction.SOUTH);
+        TestSupport.check(cellarBack.getExit(Direction.NORTH) == back,
+                "exit back lost");
+        Explorer explorer = (Explorer) cellarBack.getContents().get(0);
+        Thing carried = explorer.getContents().get(0);
+        TestSupport.check(carried instanceof Lamp && !((Lamp) carried).lit,
+                "carried lamp lost");
+    }
+
+    /**
+     * @return room written with writeObject and read back
+     */
+    private static Room copy(Room room) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(room);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (Room) in.readObject();
+        }
+    }
+
+    /**
+     * A Thing with state its repr() does not show.
+     */
+    private static class Lamp extends Thing {
+        private static final long serialVersionUID = 1L;
+
+        // Whether the lamp is burning
+        private final boolean lit;
+
+        Lamp(boolean lit) {
+            super("lamp", "a brass lamp");
+            this.lit = lit;
+        }
+
+        @Override
+        public String repr() {
+            return "L;lamp";
+        }
+    }
+}
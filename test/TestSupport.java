@@ -0,0 +1,115 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks and maps shared by the tests in this directory.
+ * <br />The tests are plain main classes (there is no test framework in
+ * the tree): each throws an AssertionError on the first failed check and
+ * prints a line saying it passed otherwise.
+ */
+final class TestSupport {
+
+    private TestSupport() {
+    }
+
+    /**
+     * @param ok Condition which should hold
+     * @param what Says what went wrong if it does not
+     * @throws AssertionError if ok is false
+     */
+    static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new AssertionError(what);
+        }
+    }
+
+    /**
+     * @param count Number of rooms
+     * @return new unlinked rooms described "room 0", "room 1" and so on
+     */
+    static Room[] rooms(int count) {
+        Room[] rooms = new Room[count];
+        for (int i = 0; i < count; i++) {
+            rooms[i] = new Room("room " + i);
+        }
+        return rooms;
+    }
+
+    /**
+     * Link rooms into a grid, row by row, with exits both ways between
+     * neighbours. A side as long as the array gives a corridor.
+     *
+     * @param rooms Rooms of the grid (a whole number of rows)
+     * @param side Rooms in each row
+     * @return rooms
+     */
+    static Room[] grid(Room[] rooms, int side) throws CrawlException {
+        for (int i = 0; i < rooms.length; i++) {
+            if ((i + 1) % side != 0) {
+                Room.makeExitPair(rooms[i], rooms[i + 1], "East", "West");
+            }
+            if (i + side < rooms.length) {
+                Room.makeExitPair(rooms[i], rooms[i + side], "South",
+                        "North");
+            }
+        }
+        return rooms;
+    }
+
+    /**
+     * @param random Source of the exits
+     * @param size Number of rooms
+     * @return the first of size rooms, each with one to four exits to
+     *         random rooms (mostly nearby, so walks have many wide levels),
+     *         so some rooms are not reachable from it
+     */
+    static Room randomMap(Random random, int size) throws CrawlException {
+        Room[] rooms = rooms(size);
+        for (int i = 0; i < size; i++) {
+            int exits = 1 + random.nextInt(4);
+            for (int j = 0; j < exits; j++) {
+                int target = random.nextInt(4) == 0 ? random.nextInt(size)
+                        : Math.floorMod(i + random.nextInt(200) - 100, size);
+                rooms[i].addExit("exit " + j, rooms[target]);
+            }
+        }
+        return rooms[0];
+    }
+
+    /**
+     * @param start Room to walk from
+     * @return rooms reachable from start in the order MapWalker visits them
+     */
+    static List<Room> walkOrder(Room start) {
+        List<Room> rooms = new ArrayList<>();
+        new MapWalker(start) {
+            @Override
+            protected void visit(Room room) {
+                rooms.add(room);
+            }
+        }.walk();
+        return rooms;
+    }
+
+    /**
+     * @return true if a holds each room of b exactly once and nothing else
+     */
+    static boolean sameRooms(List<Room> a, List<Room> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        Map<Room, Boolean> rooms = new IdentityHashMap<>();
+        for (Room room : a) {
+            rooms.put(room, true);
+        }
+        for (Room room : b) {
+            if (rooms.remove(room) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+}